@@ -0,0 +1,82 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide cada etapa de la evaluación de una expresión algebraica por separado, la evaluación en cada
+ * precisión y la evaluación completa con la caché de compilación.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AlgebraicBenchmark {
+
+    @Param({"8", "64", "512"})
+    public int tamano;
+
+    @Param({"0", "4", "16"})
+    public int profundidad;
+
+    private String infix;
+    private String postfix;
+    private AlgebraicTree.TreeNode arbol;
+    private AlgebraicTree algebraicTree;
+
+    @Setup
+    public void preparar() {
+        infix = GeneradorExpresiones.algebraica(tamano, profundidad);
+        postfix = AlgebraicTree.infixToPostfix(infix);
+        arbol = AlgebraicTree.postfixToTree(postfix);
+        algebraicTree = new AlgebraicTree();
+    }
+
+    @Benchmark
+    public String preprocess() {
+        return AlgebraicTree.preprocess(infix);
+    }
+
+    @Benchmark
+    public String infixToPostfix() {
+        return AlgebraicTree.infixToPostfix(infix);
+    }
+
+    @Benchmark
+    public AlgebraicTree.TreeNode postfixToTree() {
+        return AlgebraicTree.postfixToTree(postfix);
+    }
+
+    @Benchmark
+    public float evaluate() {
+        return AlgebraicTree.evaluate(arbol);
+    }
+
+    @Benchmark
+    public double evaluateDouble() {
+        return AlgebraicTree.evaluateDouble(arbol);
+    }
+
+    @Benchmark
+    public BigDecimal evaluateDecimal() {
+        return AlgebraicTree.evaluate(arbol, MathContext.DECIMAL128);
+    }
+
+    @Benchmark
+    public float result() {
+        return algebraicTree.result(infix);
+    }
+}
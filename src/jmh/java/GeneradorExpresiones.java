@@ -0,0 +1,72 @@
+import java.util.Random;
+
+/**
+ * Esta clase genera expresiones aleatorias, pero reproducibles, para los benchmarks.
+ *
+ * El tamaño es la cantidad de operandos y la profundidad es la cantidad de niveles de paréntesis
+ * anidados; con la misma semilla siempre se genera la misma expresión.
+ */
+final class GeneradorExpresiones {
+
+    private static final String[] OPERADORES_ALGEBRAICOS = {"+", "-", "*", "/"};
+    private static final String[] OPERADORES_LOGICOS = {"&", "|", "^"};
+
+    private GeneradorExpresiones() {
+    }
+
+    /**
+     * Genera una expresión algebraica sin espacios, como la escribe el cliente.
+     *
+     * @param tamano      La cantidad de operandos.
+     * @param profundidad La cantidad de niveles de paréntesis.
+     * @return La expresión.
+     */
+    static String algebraica(int tamano, int profundidad) {
+        StringBuilder expresion = new StringBuilder();
+        generar(new Random(42), tamano, profundidad, OPERADORES_ALGEBRAICOS, false, expresion);
+        return expresion.toString();
+    }
+
+    /**
+     * Genera una expresión lógica con los tokens separados por espacios, como la escribe el cliente.
+     *
+     * @param tamano      La cantidad de operandos.
+     * @param profundidad La cantidad de niveles de paréntesis.
+     * @return La expresión.
+     */
+    static String logica(int tamano, int profundidad) {
+        StringBuilder expresion = new StringBuilder();
+        generar(new Random(42), tamano, profundidad, OPERADORES_LOGICOS, true, expresion);
+        return expresion.toString();
+    }
+
+    /**
+     * Genera una expresión: si queda profundidad, la divide en dos mitades y pone la primera entre paréntesis.
+     *
+     * @param azar        El generador de números aleatorios.
+     * @param tamano      La cantidad de operandos.
+     * @param profundidad La cantidad de niveles de paréntesis que quedan.
+     * @param operadores  Los operadores posibles.
+     * @param logica      true para operandos booleanos separados por espacios.
+     * @param expresion   Donde se escribe la expresión.
+     */
+    private static void generar(Random azar, int tamano, int profundidad, String[] operadores, boolean logica,
+                                StringBuilder expresion) {
+        String espacio = logica ? " " : "";
+        if (profundidad == 0 || tamano < 2) {
+            for (int i = 0; i < tamano; i++) {
+                if (i > 0) {
+                    expresion.append(espacio).append(operadores[azar.nextInt(operadores.length)]).append(espacio);
+                }
+                expresion.append(logica ? String.valueOf(azar.nextBoolean()) : String.valueOf(1 + azar.nextInt(9)));
+            }
+            return;
+        }
+        int mitad = tamano / 2;
+        expresion.append('(').append(espacio);
+        generar(azar, mitad, profundidad - 1, operadores, logica, expresion);
+        expresion.append(espacio).append(')').append(espacio);
+        expresion.append(operadores[azar.nextInt(operadores.length)]).append(espacio);
+        generar(azar, tamano - mitad, profundidad - 1, operadores, logica, expresion);
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide {@link Protree#calculateIntegral} con la regla del trapecio, en serie y en paralelo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IntegralBenchmark {
+
+    @Param({"x^2", "sin(x)*exp(-x)", "sqrt(1-x^2)+ln(x+2)*cos(3*x)"})
+    public String funcion;
+
+    @Benchmark
+    public double serie() {
+        return Protree.calculateIntegral(funcion, 0, 1);
+    }
+
+    @Benchmark
+    public double paralelo() {
+        return Protree.calculateIntegral(funcion, 0, 1, true);
+    }
+}
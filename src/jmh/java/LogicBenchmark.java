@@ -0,0 +1,72 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide la evaluación de expresiones lógicas, por etapas, con {@link LogicTree#result(String)} y con
+ * una expresión ya compilada y optimizada.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogicBenchmark {
+
+    @Param({"8", "64", "512"})
+    public int tamano;
+
+    @Param({"0", "4", "16"})
+    public int profundidad;
+
+    private String infix;
+    private String postfix;
+    private LogicTree.TreeNode arbol;
+    private LogicTree logicTree;
+    private CompiledLogicExpression compilada;
+
+    @Setup
+    public void preparar() {
+        infix = GeneradorExpresiones.logica(tamano, profundidad);
+        postfix = LogicTree.infixToPostfix(infix);
+        arbol = LogicTree.postfixToTree(postfix);
+        logicTree = new LogicTree();
+        compilada = LogicTree.compile(infix);
+    }
+
+    @Benchmark
+    public String infixToPostfix() {
+        return LogicTree.infixToPostfix(infix);
+    }
+
+    @Benchmark
+    public LogicTree.TreeNode postfixToTree() {
+        return LogicTree.postfixToTree(postfix);
+    }
+
+    @Benchmark
+    public boolean evaluate() {
+        return LogicTree.evaluate(arbol);
+    }
+
+    @Benchmark
+    public boolean result() {
+        return logicTree.result(infix);
+    }
+
+    @Benchmark
+    public boolean compilada() {
+        return compilada.evaluate();
+    }
+}
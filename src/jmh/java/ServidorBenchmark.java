@@ -0,0 +1,126 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide el servidor en el mismo proceso, por la interfaz de loopback: la difusión de un mensaje a la
+ * misma conexión que lo envió, una petición de evaluación de texto y un lote de peticiones en vuelo
+ * por el protocolo por tramas. El servidor escucha en un puerto libre y guarda el historial en un
+ * directorio temporal.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServidorBenchmark {
+
+    @Param({"8", "64"})
+    public int tamano;
+
+    @Param({"1", "256"})
+    public int enVuelo;
+
+    private Path directorio;
+    private Servidor servidor;
+    private ServidorMultiplexado tramas;
+    private Socket socket;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private ClienteMultiplexado cliente;
+    private String expresion;
+    private String mensaje;
+
+    @Setup(Level.Trial)
+    public void iniciar() throws IOException {
+        directorio = Files.createTempDirectory("servidor-benchmark");
+        servidor = new Servidor(0, new EscritorHistorial(directorio.resolve("historial.csv"), 65536, 10, 0,
+                EscritorHistorial.PoliticaFsync.NUNCA));
+        tramas = new ServidorMultiplexado(0);
+        iniciarHilo("servidor", servidor::escuchar);
+        iniciarHilo("servidor-tramas", tramas::escuchar);
+
+        socket = new Socket("127.0.0.1", servidor.getPuerto());
+        socket.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        cliente = new ClienteMultiplexado("127.0.0.1", tramas.getPuerto());
+
+        expresion = GeneradorExpresiones.algebraica(tamano, 2);
+        mensaje = socket.getLocalPort() + "," + expresion + "," + new AlgebraicTree().result(expresion) + ",01-01-2024 00:00:00";
+    }
+
+    private static void iniciarHilo(String nombre, Runnable tarea) {
+        Thread hilo = new Thread(tarea, nombre);
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void detener() throws IOException {
+        cliente.close();
+        socket.close();
+        tramas.close();
+        servidor.close();
+        try (java.util.stream.Stream<Path> archivos = Files.list(directorio)) {
+            for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                Files.deleteIfExists(archivo);
+            }
+        }
+        Files.deleteIfExists(directorio);
+    }
+
+    /**
+     * Envía un mensaje y espera a recibirlo de vuelta por la difusión.
+     */
+    @Benchmark
+    public String difusion() throws IOException {
+        out.writeUTF(mensaje);
+        out.flush();
+        return in.readUTF();
+    }
+
+    /**
+     * Envía una petición {@code EVAL} de texto y espera su respuesta.
+     */
+    @Benchmark
+    public String evaluacionTexto() throws IOException {
+        out.writeUTF(ServicioEvaluacion.PETICION + "1|alge|" + expresion);
+        out.flush();
+        return in.readUTF();
+    }
+
+    /**
+     * Envía {@code enVuelo} peticiones por tramas sin esperar y después espera todas las respuestas.
+     */
+    @Benchmark
+    public Object evaluacionTramas() throws Exception {
+        CompletableFuture<?>[] futuros = new CompletableFuture<?>[enVuelo];
+        for (int i = 0; i < enVuelo; i++) {
+            futuros[i] = cliente.evaluar("alge", expresion);
+        }
+        return CompletableFuture.allOf(futuros).get();
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide llenar y vaciar las pilas de {@link Stacks}: la pila enlazada original y la pila sobre un arreglo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StackBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int elementos;
+
+    private final Stacks stacks = new Stacks();
+    private final Integer elemento = 7;
+
+    @Benchmark
+    public Object stackLinkedList() {
+        Stacks.Stack_LinkedList pila = stacks.new Stack_LinkedList();
+        for (int i = 0; i < elementos; i++) {
+            pila.push(elemento);
+        }
+        Object ultimo = null;
+        while (!pila.isEmpty()) {
+            ultimo = pila.pop();
+        }
+        return ultimo;
+    }
+
+    @Benchmark
+    public Object arrayStack() {
+        Stacks.ArrayStack<Integer> pila = new Stacks.ArrayStack<Integer>();
+        for (int i = 0; i < elementos; i++) {
+            pila.push(elemento);
+        }
+        Object ultimo = null;
+        while (!pila.isEmpty()) {
+            ultimo = pila.pop();
+        }
+        return ultimo;
+    }
+}
@@ -0,0 +1,269 @@
+import java.util.Arrays;
+
+/**
+ * Esta clase representa un analizador léxico de una sola pasada para expresiones algebraicas.
+ * Recorre los caracteres de la expresión una única vez, sin expresiones regulares, y produce
+ * tokens tipados (número, variable, operador o paréntesis).
+ */
+public final class AlgebraicLexer {
+    /** Token numérico, por ejemplo {@code 12} o {@code 2.5}. */
+    public static final byte NUMBER = 0;
+    /** Operador de suma {@code +}. */
+    public static final byte PLUS = 1;
+    /** Operador de resta binaria {@code -}. */
+    public static final byte MINUS = 2;
+    /** Operador de multiplicación {@code *}. */
+    public static final byte TIMES = 3;
+    /** Operador de división {@code /}. */
+    public static final byte DIVIDE = 4;
+    /** Operador de potencia {@code **}. */
+    public static final byte POWER = 5;
+    /** Operador de porcentaje {@code %}. */
+    public static final byte PERCENT = 6;
+    /** Menos unario, por ejemplo el {@code -} de {@code 3*-2}. */
+    public static final byte NEGATE = 7;
+    /** Paréntesis izquierdo. */
+    public static final byte LEFT_PAREN = 8;
+    /** Paréntesis derecho. */
+    public static final byte RIGHT_PAREN = 9;
+    /** Variable, por ejemplo {@code x} o {@code precio_1}. */
+    public static final byte IDENTIFIER = 10;
+
+    private AlgebraicLexer() {
+    }
+
+    /**
+     * Clase interna que representa la secuencia de tokens producida por el analizador.
+     * Los tokens se guardan en arreglos paralelos para no crear un objeto por token.
+     */
+    static final class Tokens {
+        private final String source;
+        private byte[] kinds;
+        private int[] starts;
+        private int[] ends;
+        private int count;
+
+        /**
+         * Constructor de una secuencia de tokens vacía.
+         *
+         * @param source   La expresión de la que provienen los tokens.
+         * @param capacity La capacidad inicial.
+         */
+        Tokens(String source, int capacity) {
+            this.source = source;
+            this.kinds = new byte[capacity];
+            this.starts = new int[capacity];
+            this.ends = new int[capacity];
+        }
+
+        /**
+         * Agrega un token al final de la secuencia.
+         *
+         * @param kind  El tipo del token.
+         * @param start La posición inicial del token en la expresión.
+         * @param end   La posición final (exclusiva) del token en la expresión.
+         */
+        void add(byte kind, int start, int end) {
+            if (count == kinds.length) {
+                int capacity = count * 2 + 1;
+                kinds = Arrays.copyOf(kinds, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+            kinds[count] = kind;
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        /**
+         * Obtiene la cantidad de tokens.
+         *
+         * @return La cantidad de tokens.
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Obtiene el tipo de un token.
+         *
+         * @param index La posición del token.
+         * @return El tipo del token.
+         */
+        public byte kind(int index) {
+            return kinds[index];
+        }
+
+        /**
+         * Obtiene el texto de un token tal como aparece en la expresión.
+         *
+         * @param index La posición del token.
+         * @return El texto del token.
+         */
+        public String text(int index) {
+            return source.substring(starts[index], ends[index]);
+        }
+    }
+
+    /**
+     * Convierte una expresión algebraica en tokens en una sola pasada.
+     * Los espacios se ignoran, {@code **} se reconoce como potencia y un {@code -} en posición de prefijo
+     * (al inicio, después de un operador o después de un paréntesis izquierdo) se reconoce como menos unario.
+     * Un {@code +} en posición de prefijo se ignora.
+     *
+     * @param infix La expresión infix.
+     * @return Los tokens de la expresión.
+     * @throws IllegalArgumentException si la expresión contiene un carácter no reconocido.
+     */
+    public static Tokens tokenize(String infix) {
+        int length = infix.length();
+        Tokens tokens = new Tokens(infix, Math.max(4, length));
+        boolean operandExpected = true;
+        int i = 0;
+        while (i < length) {
+            char c = infix.charAt(i);
+            if (c == ' ' || Character.isWhitespace(c)) {
+                i++;
+            } else if ((c >= '0' && c <= '9') || c == '.') {
+                int start = i;
+                while (i < length && ((infix.charAt(i) >= '0' && infix.charAt(i) <= '9') || infix.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(NUMBER, start, i);
+                operandExpected = false;
+            } else if (isIdentifierStart(c)) {
+                int start = i;
+                while (i < length && (isIdentifierStart(infix.charAt(i)) || (infix.charAt(i) >= '0' && infix.charAt(i) <= '9'))) {
+                    i++;
+                }
+                tokens.add(IDENTIFIER, start, i);
+                operandExpected = false;
+            } else {
+                byte kind;
+                int start = i++;
+                switch (c) {
+                    case '+':
+                        if (operandExpected) {
+                            continue;
+                        }
+                        kind = PLUS;
+                        break;
+                    case '-':
+                        kind = operandExpected ? NEGATE : MINUS;
+                        break;
+                    case '*':
+                        if (i < length && infix.charAt(i) == '*') {
+                            i++;
+                            kind = POWER;
+                        } else {
+                            kind = TIMES;
+                        }
+                        break;
+                    case '/':
+                        kind = DIVIDE;
+                        break;
+                    case '%':
+                        kind = PERCENT;
+                        break;
+                    case '(':
+                        kind = LEFT_PAREN;
+                        break;
+                    case ')':
+                        kind = RIGHT_PAREN;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Carácter no reconocido '" + c + "' en la posición " + start);
+                }
+                tokens.add(kind, start, i);
+                operandExpected = kind != RIGHT_PAREN;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Verifica si un carácter puede iniciar el nombre de una variable.
+     *
+     * @param c El carácter a verificar.
+     * @return true si es una letra ASCII o un guion bajo, false en caso contrario.
+     */
+    static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    /**
+     * Verifica si un tipo de token es un operando (número o variable).
+     *
+     * @param kind El tipo de token.
+     * @return true si es un operando, false en caso contrario.
+     */
+    public static boolean isOperand(byte kind) {
+        return kind == NUMBER || kind == IDENTIFIER;
+    }
+
+    /**
+     * Verifica si un tipo de token es un operador binario.
+     *
+     * @param kind El tipo de token.
+     * @return true si es un operador binario, false en caso contrario.
+     */
+    public static boolean isBinaryOperator(byte kind) {
+        return kind >= PLUS && kind <= PERCENT;
+    }
+
+    /**
+     * Obtiene la precedencia de un tipo de token operador. El menos unario está entre la
+     * multiplicación y la potencia, así {@code -2**2} es {@code -(2**2)} y {@code -2*3} es {@code (-2)*3}.
+     *
+     * @param kind El tipo de token.
+     * @return El nivel de precedencia del operador.
+     */
+    public static int precedence(byte kind) {
+        switch (kind) {
+            case PLUS:
+            case MINUS:
+                return 1;
+            case TIMES:
+            case DIVIDE:
+            case PERCENT:
+                return 2;
+            case NEGATE:
+                return 3;
+            case POWER:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Obtiene el símbolo con el que un operador aparece en el árbol de expresiones.
+     *
+     * @param kind El tipo de token.
+     * @return El símbolo del operador.
+     */
+    public static String symbol(byte kind) {
+        switch (kind) {
+            case PLUS:
+                return "+";
+            case MINUS:
+            case NEGATE:
+                return "-";
+            case TIMES:
+                return "*";
+            case DIVIDE:
+                return "/";
+            case POWER:
+                return "**";
+            case PERCENT:
+                return "%";
+            case LEFT_PAREN:
+                return "(";
+            case RIGHT_PAREN:
+                return ")";
+            default:
+                return "";
+        }
+    }
+}
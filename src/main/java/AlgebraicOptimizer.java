@@ -0,0 +1,217 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Esta clase optimiza un árbol de expresiones algebraicas antes de traducirlo a un programa.
+ *
+ * El recorrido pliega los subárboles constantes (con la misma semántica de doble precisión que
+ * {@link AlgebraicProgram#apply}) y une los subárboles idénticos en un solo nodo (hash-consing), así
+ * el resultado es un grafo dirigido acíclico en el que cada subexpresión distinta aparece una vez.
+ * En la suma y la multiplicación los operandos se ordenan antes de buscar el nodo, porque ambas son
+ * conmutativas también en punto flotante: {@code a*b} y {@code b*a} son el mismo nodo.
+ *
+ * El árbol original no se modifica; los nodos del resultado se comparten y no deben modificarse.
+ */
+final class AlgebraicOptimizer {
+
+    /**
+     * Clase interna que identifica un nodo por su operador y por la identidad de sus hijos, que ya
+     * están unificados.
+     */
+    private static final class Key {
+        private final String data;
+        private final AlgebraicTree.TreeNode left;
+        private final AlgebraicTree.TreeNode right;
+
+        /**
+         * Constructor de una clave.
+         *
+         * @param data  El operador o el valor de la hoja.
+         * @param left  El hijo izquierdo unificado.
+         * @param right El hijo derecho unificado.
+         */
+        Key(String data, AlgebraicTree.TreeNode left, AlgebraicTree.TreeNode right) {
+            this.data = data;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return left == key.left && right == key.right && data.equals(key.data);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = data.hashCode();
+            hash = hash * 31 + System.identityHashCode(left);
+            return hash * 31 + System.identityHashCode(right);
+        }
+    }
+
+    private final Map<Key, AlgebraicTree.TreeNode> unique = new HashMap<Key, AlgebraicTree.TreeNode>();
+    private final Map<AlgebraicTree.TreeNode, Integer> order = new HashMap<AlgebraicTree.TreeNode, Integer>();
+
+    private AlgebraicOptimizer() {
+    }
+
+    /**
+     * Optimiza un árbol de expresiones algebraicas.
+     *
+     * @param tree El árbol a optimizar.
+     * @return La raíz del grafo optimizado, o null si el árbol es null.
+     */
+    static AlgebraicTree.TreeNode optimize(AlgebraicTree.TreeNode tree) {
+        return tree == null ? null : new AlgebraicOptimizer().visit(tree);
+    }
+
+    /**
+     * Optimiza un árbol en postorden con pilas explícitas, para no desbordar la pila de la JVM en
+     * expresiones muy anidadas.
+     *
+     * @param tree La raíz del árbol.
+     * @return El nodo unificado equivalente a la raíz.
+     */
+    private AlgebraicTree.TreeNode visit(AlgebraicTree.TreeNode tree) {
+        Stacks.ArrayStack<AlgebraicTree.TreeNode> nodes = new Stacks.ArrayStack<>();
+        Stacks.IntStack states = new Stacks.IntStack();
+        Stacks.ArrayStack<AlgebraicTree.TreeNode> results = new Stacks.ArrayStack<>();
+        nodes.push(tree);
+        states.push(0);
+        while (!nodes.isEmpty()) {
+            AlgebraicTree.TreeNode node = nodes.peek();
+            int state = states.pop();
+            if (node == null) {
+                nodes.pop();
+                results.push(null);
+            } else if (node.getLeft() == null && node.getRight() == null) {
+                nodes.pop();
+                results.push(leaf(node.getElement()));
+            } else if (state < 2) {
+                // Estado 0: falta el hijo izquierdo; estado 1: falta el derecho; estado 2: se optimiza el nodo
+                states.push(state + 1);
+                nodes.push(state == 0 ? node.getLeft() : node.getRight());
+                states.push(0);
+            } else {
+                nodes.pop();
+                AlgebraicTree.TreeNode right = results.pop();
+                AlgebraicTree.TreeNode left = results.pop();
+                results.push(combine(node.getElement(), left, right));
+            }
+        }
+        return results.pop();
+    }
+
+    /**
+     * Unifica una hoja; los números se escriben en una forma canónica.
+     *
+     * @param data El valor de la hoja.
+     * @return La hoja unificada.
+     */
+    private AlgebraicTree.TreeNode leaf(String data) {
+        if (!AlgebraicTree.isVariable(data)) {
+            data = Double.toString(Double.parseDouble(data));
+        }
+        return intern(data, null, null);
+    }
+
+    /**
+     * Optimiza un operador cuyos hijos ya están optimizados.
+     *
+     * @param operator El operador.
+     * @param left     El hijo izquierdo unificado, o null.
+     * @param right    El hijo derecho unificado, o null.
+     * @return El nodo unificado equivalente.
+     */
+    private AlgebraicTree.TreeNode combine(String operator, AlgebraicTree.TreeNode left, AlgebraicTree.TreeNode right) {
+        if (left == null && operator.equals("-")) {
+            if (isConstant(right)) {
+                return constant(0 - value(right));
+            }
+            return intern(operator, null, right);
+        }
+        if (left == null || right == null) {
+            // Un operador binario con un hijo vacío lo evalúa como 0
+            left = left == null ? intern("0.0", null, null) : left;
+            right = right == null ? intern("0.0", null, null) : right;
+        }
+        if (isConstant(left) && isConstant(right)) {
+            double folded = AlgebraicProgram.apply(AlgebraicProgram.opcode(operator), value(left), value(right));
+            // Un valor no finito no se pliega, porque su texto ("NaN", "Infinity") se confundiría con una variable
+            if (Double.isFinite(folded)) {
+                return constant(folded);
+            }
+        }
+        if ((operator.equals("+") || operator.equals("*")) && rank(left) > rank(right)) {
+            AlgebraicTree.TreeNode swap = left;
+            left = right;
+            right = swap;
+        }
+        return intern(operator, left, right);
+    }
+
+    /**
+     * Crea la hoja de una constante plegada.
+     *
+     * @param value El valor plegado, finito.
+     * @return La hoja unificada.
+     */
+    private AlgebraicTree.TreeNode constant(double value) {
+        return intern(Double.toString(value), null, null);
+    }
+
+    /**
+     * Obtiene el nodo único para un operador y sus hijos, creándolo si no existe.
+     *
+     * @param data  El operador o el valor de la hoja.
+     * @param left  El hijo izquierdo unificado.
+     * @param right El hijo derecho unificado.
+     * @return El nodo único.
+     */
+    private AlgebraicTree.TreeNode intern(String data, AlgebraicTree.TreeNode left, AlgebraicTree.TreeNode right) {
+        Key key = new Key(data, left, right);
+        AlgebraicTree.TreeNode node = unique.get(key);
+        if (node == null) {
+            node = new AlgebraicTree.TreeNode(data, left, right);
+            unique.put(key, node);
+            order.put(node, order.size());
+        }
+        return node;
+    }
+
+    /**
+     * Obtiene el orden de creación de un nodo, que sirve para ordenar los operandos conmutativos de
+     * forma estable.
+     *
+     * @param node El nodo unificado.
+     * @return El orden del nodo.
+     */
+    private int rank(AlgebraicTree.TreeNode node) {
+        Integer rank = order.get(node);
+        return rank == null ? Integer.MAX_VALUE : rank;
+    }
+
+    /**
+     * Verifica si un nodo es una constante numérica.
+     *
+     * @param node El nodo.
+     * @return true si el nodo es una hoja que no es una variable.
+     */
+    private static boolean isConstant(AlgebraicTree.TreeNode node) {
+        return node != null && node.getLeft() == null && node.getRight() == null && !AlgebraicTree.isVariable(node.getElement());
+    }
+
+    /**
+     * Obtiene el valor de una hoja constante.
+     *
+     * @param node La hoja.
+     * @return Su valor.
+     */
+    private static double value(AlgebraicTree.TreeNode node) {
+        return Double.parseDouble(node.getElement());
+    }
+}
@@ -0,0 +1,463 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Esta clase representa una expresión algebraica traducida a un programa postfix plano:
+ * un arreglo de códigos de operación de un byte más un arreglo de constantes {@code double}.
+ * El programa se ejecuta sobre una pila de operandos primitiva, sin recorrer nodos ni
+ * convertir cadenas en cada evaluación. Las variables se leen por posición desde un arreglo de valores.
+ * Las instancias son inmutables.
+ */
+public final class AlgebraicProgram {
+    /** Apila la siguiente constante del arreglo de constantes. */
+    static final byte CONST = 0;
+    /** Suma los dos operandos superiores. */
+    static final byte ADD = 1;
+    /** Resta los dos operandos superiores. */
+    static final byte SUB = 2;
+    /** Multiplica los dos operandos superiores. */
+    static final byte MUL = 3;
+    /** Divide los dos operandos superiores; la división entre cero da -1. */
+    static final byte DIV = 4;
+    /** Eleva a potencia los dos operandos superiores; una base negativa da -1. */
+    static final byte POW = 5;
+    /** Calcula el porcentaje {@code izquierda/100 * derecha}. */
+    static final byte PERCENT = 6;
+    /** Cambia el signo del operando superior. */
+    static final byte NEG = 7;
+    /** Apila el valor de una variable; el byte siguiente indica su posición. */
+    static final byte LOAD = 8;
+    /** Guarda el operando superior, sin sacarlo, en una variable local; los dos bytes siguientes indican su posición. */
+    static final byte STORE = 9;
+    /** Apila el valor de una variable local; los dos bytes siguientes indican su posición. */
+    static final byte LOCAL = 10;
+
+    /**
+     * Cantidad máxima de variables distintas que puede tener un programa.
+     */
+    static final int MAX_VARIABLES = 256;
+
+    /**
+     * Cantidad máxima de subexpresiones compartidas que se guardan en variables locales; las demás
+     * se vuelven a calcular en cada uso. El límite acota los registros de {@link BatchEvaluator}, que
+     * reserva una columna por variable local.
+     */
+    static final int MAX_LOCALS = 1024;
+
+    private static final double[] NO_VALUES = new double[0];
+
+    private final byte[] code;
+    private final double[] constants;
+    private final String[] variables;
+    private final int maxStack;
+    private final int locals;
+
+    /**
+     * Constructor de un programa.
+     *
+     * @param code      Los códigos de operación.
+     * @param constants Las constantes en el orden en que se apilan.
+     * @param variables Los nombres de las variables, en el orden de sus posiciones.
+     * @param maxStack  La profundidad máxima que alcanza la pila de operandos.
+     * @param locals    La cantidad de variables locales.
+     */
+    private AlgebraicProgram(byte[] code, double[] constants, String[] variables, int maxStack, int locals) {
+        this.code = code;
+        this.constants = constants;
+        this.variables = variables;
+        this.maxStack = maxStack;
+        this.locals = locals;
+    }
+
+    /**
+     * Clase interna que acumula los códigos y constantes mientras se recorre el árbol.
+     */
+    private static final class Builder {
+        private byte[] code = new byte[16];
+        private double[] constants = new double[8];
+        private final Map<String, Integer> variables = new LinkedHashMap<>();
+        private final Map<AlgebraicTree.TreeNode, Integer> uses = new IdentityHashMap<>();
+        private final Map<AlgebraicTree.TreeNode, Integer> localSlots = new IdentityHashMap<>();
+        private int codeLength;
+        private int constantCount;
+        private int depth;
+        private int maxDepth;
+
+        /**
+         * Agrega un código de operación y actualiza la profundidad de la pila.
+         *
+         * @param op    El código de operación.
+         * @param delta El cambio en la profundidad de la pila que produce la operación.
+         */
+        void emit(byte op, int delta) {
+            if (codeLength == code.length) {
+                code = Arrays.copyOf(code, codeLength * 2);
+            }
+            code[codeLength++] = op;
+            depth += delta;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        /**
+         * Agrega una constante al programa.
+         *
+         * @param value El valor de la constante.
+         */
+        void constant(double value) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            }
+            constants[constantCount++] = value;
+            emit(CONST, 1);
+        }
+
+        /**
+         * Agrega la lectura de una variable, asignándole una posición la primera vez que aparece.
+         *
+         * @param name El nombre de la variable.
+         */
+        void variable(String name) {
+            Integer slot = variables.get(name);
+            if (slot == null) {
+                if (variables.size() == MAX_VARIABLES) {
+                    throw new IllegalArgumentException("La expresión tiene más de " + MAX_VARIABLES + " variables");
+                }
+                slot = variables.size();
+                variables.put(name, slot);
+            }
+            emit(LOAD, 1);
+            emit(slot.byteValue(), 0);
+        }
+
+        /**
+         * Agrega una operación sobre una variable local, con su posición en dos bytes.
+         *
+         * @param op    {@link #STORE} o {@link #LOCAL}.
+         * @param slot  La posición de la variable local.
+         * @param delta El cambio en la profundidad de la pila que produce la operación.
+         */
+        void local(byte op, int slot, int delta) {
+            emit(op, delta);
+            emit((byte) (slot >>> 8), 0);
+            emit((byte) slot, 0);
+        }
+
+        /**
+         * Construye el programa inmutable.
+         *
+         * @return El programa.
+         */
+        AlgebraicProgram build() {
+            return new AlgebraicProgram(Arrays.copyOf(code, codeLength), Arrays.copyOf(constants, constantCount),
+                    variables.keySet().toArray(new String[0]), maxDepth, localSlots.size());
+        }
+    }
+
+    /**
+     * Traduce un árbol de expresiones algebraicas a un programa. Antes se optimiza con
+     * {@link AlgebraicOptimizer}: las constantes se pliegan y cada subexpresión repetida se calcula una
+     * sola vez por evaluación, guardándola en una variable local la primera vez.
+     *
+     * @param tree El árbol de expresiones.
+     * @return El programa equivalente.
+     * @throws IllegalArgumentException si el árbol contiene un operador desconocido.
+     */
+    public static AlgebraicProgram compile(AlgebraicTree.TreeNode tree) {
+        AlgebraicTree.TreeNode graph = AlgebraicOptimizer.optimize(tree);
+        Builder builder = new Builder();
+        countUses(graph, builder.uses);
+        lower(graph, builder);
+        return builder.build();
+    }
+
+    /**
+     * Cuenta cuántos padres tiene cada nodo del grafo; los hijos de un nodo se recorren solo la
+     * primera vez que se encuentra.
+     *
+     * @param graph La raíz del grafo.
+     * @param uses  La cantidad de padres de cada nodo.
+     */
+    private static void countUses(AlgebraicTree.TreeNode graph, Map<AlgebraicTree.TreeNode, Integer> uses) {
+        Stacks.ArrayStack<AlgebraicTree.TreeNode> pending = new Stacks.ArrayStack<>();
+        pending.push(graph);
+        while (!pending.isEmpty()) {
+            AlgebraicTree.TreeNode node = pending.pop();
+            if (node == null) {
+                continue;
+            }
+            Integer count = uses.get(node);
+            uses.put(node, count == null ? 1 : count + 1);
+            if (count == null) {
+                pending.push(node.getRight());
+                pending.push(node.getLeft());
+            }
+        }
+    }
+
+    /**
+     * Traduce el grafo en orden postfix, con una pila explícita para no desbordar la pila de la JVM en
+     * expresiones muy anidadas. Un nodo compartido se traduce la primera vez y se guarda en una
+     * variable local; las siguientes veces solo se lee la variable local. Las hojas se traducen
+     * directamente porque leerlas ya es barato.
+     *
+     * @param graph   La raíz del grafo.
+     * @param builder El acumulador del programa.
+     */
+    private static void lower(AlgebraicTree.TreeNode graph, Builder builder) {
+        Stacks.ArrayStack<AlgebraicTree.TreeNode> nodes = new Stacks.ArrayStack<>();
+        Stacks.IntStack states = new Stacks.IntStack();
+        nodes.push(graph);
+        states.push(0);
+        while (!nodes.isEmpty()) {
+            AlgebraicTree.TreeNode node = nodes.peek();
+            int state = states.pop();
+            if (node == null || node.getLeft() == null && node.getRight() == null) {
+                nodes.pop();
+                lowerLeaf(node, builder);
+                continue;
+            }
+            boolean shared = builder.uses.get(node) > 1;
+            boolean negate = node.getLeft() == null && node.getElement().equals("-");
+            if (state == 0) {
+                Integer slot = shared ? builder.localSlots.get(node) : null;
+                if (slot != null) {
+                    nodes.pop();
+                    builder.local(LOCAL, slot, 1);
+                } else {
+                    // Estado 0: falta el hijo izquierdo; estado 1: falta el derecho; estado 2: se emite el operador
+                    states.push(negate ? 2 : 1);
+                    nodes.push(negate ? node.getRight() : node.getLeft());
+                    states.push(0);
+                }
+            } else if (state == 1) {
+                states.push(2);
+                nodes.push(node.getRight());
+                states.push(0);
+            } else {
+                nodes.pop();
+                if (negate) {
+                    builder.emit(NEG, 0);
+                } else {
+                    builder.emit(opcode(node.getElement()), -1);
+                }
+                if (shared && builder.localSlots.size() < MAX_LOCALS) {
+                    int slot = builder.localSlots.size();
+                    builder.localSlots.put(node, slot);
+                    builder.local(STORE, slot, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Traduce una hoja; un hijo vacío vale 0.
+     *
+     * @param leaf    La hoja, o null.
+     * @param builder El acumulador del programa.
+     */
+    private static void lowerLeaf(AlgebraicTree.TreeNode leaf, Builder builder) {
+        if (leaf == null) {
+            builder.constant(0);
+        } else if (AlgebraicTree.isVariable(leaf.getElement())) {
+            builder.variable(leaf.getElement());
+        } else {
+            builder.constant(Double.parseDouble(leaf.getElement()));
+        }
+    }
+
+    /**
+     * Obtiene el código de operación de un operador binario.
+     *
+     * @param operator El operador.
+     * @return El código de operación.
+     */
+    static byte opcode(String operator) {
+        switch (operator) {
+            case "+":
+                return ADD;
+            case "-":
+                return SUB;
+            case "*":
+                return MUL;
+            case "/":
+                return DIV;
+            case "**":
+                return POW;
+            case "%":
+                return PERCENT;
+            default:
+                throw new IllegalArgumentException("Operador desconocido: " + operator);
+        }
+    }
+
+    /**
+     * Obtiene los nombres de las variables del programa. La posición de cada nombre es la posición
+     * de su valor en el arreglo que recibe {@link #evaluate(double[], double[])}.
+     *
+     * @return Una copia de los nombres de las variables.
+     */
+    public String[] getVariables() {
+        return variables.clone();
+    }
+
+    /**
+     * Verifica que el programa no tenga variables, para los caminos que lo evalúan sin valores.
+     *
+     * @throws IllegalArgumentException si el programa tiene variables, con sus nombres en el mensaje.
+     */
+    void requireNoVariables() {
+        if (variables.length > 0) {
+            throw new IllegalArgumentException("La expresión tiene variables sin valor: " + String.join(", ", variables));
+        }
+    }
+
+    /**
+     * Obtiene el código de operación, para los evaluadores que recorren el programa por su cuenta.
+     *
+     * @return Los códigos de operación, que no deben modificarse.
+     */
+    byte[] code() {
+        return code;
+    }
+
+    /**
+     * Obtiene las constantes, para los evaluadores que recorren el programa por su cuenta.
+     *
+     * @return Las constantes, que no deben modificarse.
+     */
+    double[] constants() {
+        return constants;
+    }
+
+    /**
+     * Obtiene el tamaño de pila que necesita {@link #evaluate(double[])}: la profundidad máxima de la
+     * pila de operandos más las variables locales, que se guardan al final de la misma pila.
+     *
+     * @return El tamaño de la pila.
+     */
+    public int getMaxStack() {
+        return maxStack + locals;
+    }
+
+    /**
+     * Obtiene la posición de la pila donde empiezan las variables locales.
+     *
+     * @return La profundidad máxima de la pila de operandos.
+     */
+    int localBase() {
+        return maxStack;
+    }
+
+    /**
+     * Lee la posición de dos bytes que sigue a un código {@link #STORE} o {@link #LOCAL}.
+     *
+     * @param code El código del programa.
+     * @param pc   La posición del código de operación.
+     * @return La posición de la variable local.
+     */
+    static int localSlot(byte[] code, int pc) {
+        return (code[pc + 1] & 0xFF) << 8 | code[pc + 2] & 0xFF;
+    }
+
+    /**
+     * Reserva una pila de operandos del tamaño que necesita el programa.
+     *
+     * @return Una pila nueva, reutilizable en todas las evaluaciones de un mismo hilo.
+     */
+    public double[] newStack() {
+        return new double[maxStack + locals];
+    }
+
+    /**
+     * Evalúa un programa sin variables reservando una pila nueva.
+     *
+     * @return El resultado de la expresión.
+     * @throws IllegalArgumentException si el programa tiene variables.
+     */
+    public double evaluate() {
+        requireNoVariables();
+        return evaluate(newStack(), NO_VALUES);
+    }
+
+    /**
+     * Evalúa un programa sin variables sobre una pila provista por quien llama, sin reservar memoria.
+     *
+     * @param stack La pila de operandos, con al menos {@link #getMaxStack()} posiciones.
+     * @return El resultado de la expresión.
+     * @throws IllegalArgumentException si el programa tiene variables.
+     */
+    public double evaluate(double[] stack) {
+        requireNoVariables();
+        return evaluate(stack, NO_VALUES);
+    }
+
+    /**
+     * Evalúa el programa sobre una pila provista por quien llama, sin reservar memoria.
+     * Una misma pila puede reutilizarse en todas las evaluaciones de un hilo.
+     *
+     * @param stack  La pila de operandos, con al menos {@link #getMaxStack()} posiciones.
+     * @param values Los valores de las variables, en el orden de {@link #getVariables()}.
+     * @return El resultado de la expresión.
+     */
+    public double evaluate(double[] stack, double[] values) {
+        byte[] code = this.code;
+        double[] constants = this.constants;
+        int base = maxStack;
+        int top = -1;
+        int constant = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            switch (code[pc]) {
+                case CONST:
+                    stack[++top] = constants[constant++];
+                    break;
+                case LOAD:
+                    stack[++top] = values[code[++pc] & 0xFF];
+                    break;
+                case STORE:
+                    stack[base + localSlot(code, pc)] = stack[top];
+                    pc += 2;
+                    break;
+                case LOCAL:
+                    stack[++top] = stack[base + localSlot(code, pc)];
+                    pc += 2;
+                    break;
+                case NEG:
+                    stack[top] = 0 - stack[top];
+                    break;
+                default:
+                    double right = stack[top--];
+                    stack[top] = apply(code[pc], stack[top], right);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Aplica un operador binario con la misma semántica que {@link AlgebraicTree#evaluate}.
+     *
+     * @param op    El código de operación.
+     * @param left  El operando izquierdo.
+     * @param right El operando derecho.
+     * @return El resultado de la operación.
+     */
+    static double apply(byte op, double left, double right) {
+        switch (op) {
+            case ADD:
+                return left + right;
+            case SUB:
+                return left - right;
+            case MUL:
+                return left * right;
+            case DIV:
+                return right == 0 ? -1 : left / right;
+            case POW:
+                return left < 0 ? -1 : Math.pow(left, right);
+            case PERCENT:
+                return left / 100 * right;
+            default:
+                return 0;
+        }
+    }
+}
@@ -1,3 +1,7 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
 /**
  * Esta clase representa un árbol algebraico que puede convertir expresiones infix en postfix,
  * construir un árbol de expresiones postfix y evaluar el resultado de la expresión.
@@ -55,6 +59,21 @@ public class AlgebraicTree {
             return right;
         }
     }
+    /**
+     * Cantidad máxima de expresiones compiladas que se guardan en la caché.
+     */
+    private static final int CACHE_CAPACITY = 256;
+
+    /**
+     * Caché acotada de expresiones compiladas, indexada por la expresión infix normalizada.
+     */
+    private static final CompilationCache<CompiledExpression> cache = new CompilationCache<CompiledExpression>(CACHE_CAPACITY);
+
+    /**
+     * Tiempo de análisis de las expresiones que no estaban en la caché.
+     */
+    private static final Metricas.Histograma ANALISIS = Metricas.histograma("algebraica.analisis");
+
     /**
      * Verifica si una cadena es un operador válido.
      *
@@ -87,46 +106,217 @@ public class AlgebraicTree {
     }
     /**
      * Convierte una expresión infix en una expresión postfix.
+     * El menos unario se escribe como una resta desde cero, por ejemplo {@code 3*-2} queda {@code 3 0 2 - *}.
      *
      * @param infix La expresión infix a convertir.
      * @return La expresión postfix resultante.
+     * @throws IllegalArgumentException si la expresión está vacía.
      */
     public static String infixToPostfix(String infix) {
+        return postfix(parse(infix));
+    }
+
+    /**
+     * Separa una expresión infix en tokens y construye su árbol de expresiones.
+     *
+     * @param infix La expresión infix.
+     * @return El nodo raíz del árbol de expresiones.
+     * @throws IllegalArgumentException si la expresión está vacía.
+     */
+    private static TreeNode parse(String infix) {
+        AlgebraicLexer.Tokens tokens = AlgebraicLexer.tokenize(infix);
+        TreeNode tree = toTree(tokens, toPostfix(tokens));
+        if (tree == null) {
+            throw new IllegalArgumentException("La expresión algebraica está vacía: \"" + infix + "\"");
+        }
+        return tree;
+    }
+
+    /**
+     * Escribe un árbol de expresiones en notación postfix, con los tokens separados por un espacio.
+     *
+     * @param tree El árbol de expresiones.
+     * @return La expresión postfix.
+     */
+    static String postfix(TreeNode tree) {
         StringBuilder postfix = new StringBuilder();
-        Stacks.Stack_LinkedList stack = new Stacks().new Stack_LinkedList();
-        String preprocessed = preprocess(infix);
+        appendPostfix(tree, postfix);
+        return postfix.toString().trim();
+    }
 
-        for (String token : preprocessed.split("\\s+")) {
-            if (Character.isDigit(token.charAt(0)) || (token.length() > 1 && token.startsWith("-") && Character.isDigit(token.charAt(1)))){
-                postfix.append(token);
+    /**
+     * Escribe un árbol de expresiones en notación postfix, sin recursión. Un hijo izquierdo vacío se
+     * escribe como {@code 0}.
+     *
+     * @param tree    El árbol de expresiones.
+     * @param postfix El destino de la expresión postfix.
+     */
+    private static void appendPostfix(TreeNode tree, StringBuilder postfix) {
+        Stacks.ArrayStack<TreeNode> nodes = new Stacks.ArrayStack<>();
+        Stacks.IntStack states = new Stacks.IntStack();
+        nodes.push(tree);
+        states.push(0);
+        while (!nodes.isEmpty()) {
+            TreeNode node = nodes.peek();
+            int state = states.pop();
+            if (state == 0) {
+                states.push(1);
+                if (node.getLeft() != null) {
+                    nodes.push(node.getLeft());
+                    states.push(0);
+                } else if (node.getRight() != null) {
+                    postfix.append("0 ");
+                }
+            } else if (state == 1) {
+                states.push(2);
+                if (node.getRight() != null) {
+                    nodes.push(node.getRight());
+                    states.push(0);
+                }
+            } else {
+                nodes.pop();
+                postfix.append(node.getElement());
                 postfix.append(' ');
-            } else if (isOperator(token)) {
-                while (!stack.isEmpty() && isOperator((String) stack.peek())) {
-                    String topOperator = (String) stack.peek();
-                    if ((token.equals("**") && precedence(topOperator) > precedence(token))
-                            || (!token.equals("**") && precedence(topOperator) >= precedence(token))) {
-                        postfix.append(stack.pop());
-                        postfix.append(' ');
+            }
+        }
+    }
+
+    /**
+     * Ordena los tokens de una expresión en notación postfix con el algoritmo shunting-yard.
+     *
+     * @param tokens Los tokens de la expresión infix.
+     * @return Las posiciones de los tokens en orden postfix (sin paréntesis).
+     */
+    static int[] toPostfix(AlgebraicLexer.Tokens tokens) {
+        int[] postfix = new int[tokens.size()];
+        int length = 0;
+        Stacks.IntStack stack = new Stacks.IntStack();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            byte kind = tokens.kind(i);
+            if (AlgebraicLexer.isOperand(kind)) {
+                postfix[length++] = i;
+            } else if (AlgebraicLexer.isBinaryOperator(kind)) {
+                int precedence = AlgebraicLexer.precedence(kind);
+                while (!stack.isEmpty()) {
+                    int top = stack.peek();
+                    int topPrecedence = AlgebraicLexer.precedence(tokens.kind(top));
+                    if ((kind == AlgebraicLexer.POWER && topPrecedence > precedence)
+                            || (kind != AlgebraicLexer.POWER && topPrecedence >= precedence)) {
+                        postfix[length++] = stack.pop();
                     } else {
                         break;
                     }
                 }
-                stack.push(token);
-            } else if (token.equals("(")) {
-                stack.push(token);
-            } else if (token.equals(")")) {
-                while (!stack.isEmpty() && !stack.peek().equals("(")) {
-                    postfix.append(stack.pop());
-                    postfix.append(' ');
+                stack.push(i);
+            } else if (kind == AlgebraicLexer.NEGATE || kind == AlgebraicLexer.LEFT_PAREN) {
+                stack.push(i);
+            } else if (kind == AlgebraicLexer.RIGHT_PAREN) {
+                while (!stack.isEmpty() && tokens.kind(stack.peek()) != AlgebraicLexer.LEFT_PAREN) {
+                    postfix[length++] = stack.pop();
+                }
+                if (!stack.isEmpty()) {
+                    stack.pop();
                 }
-                stack.pop();
             }
         }
         while (!stack.isEmpty()) {
-            postfix.append(stack.pop());
-            postfix.append(' ');
+            int top = stack.pop();
+            if (tokens.kind(top) != AlgebraicLexer.LEFT_PAREN) {
+                postfix[length++] = top;
+            }
         }
-        return postfix.toString().trim();
+        return Arrays.copyOf(postfix, length);
+    }
+
+    /**
+     * Construye un árbol de expresiones a partir de tokens en orden postfix.
+     * El menos unario se representa como un nodo {@code -} sin hijo izquierdo, que se evalúa como {@code 0 - x}.
+     *
+     * @param tokens  Los tokens de la expresión.
+     * @param postfix Las posiciones de los tokens en orden postfix.
+     * @return El nodo raíz del árbol de expresiones.
+     */
+    static TreeNode toTree(AlgebraicLexer.Tokens tokens, int[] postfix) {
+        Stacks.ArrayStack<TreeNode> stack = new Stacks.ArrayStack<>();
+        for (int index : postfix) {
+            byte kind = tokens.kind(index);
+            if (AlgebraicLexer.isOperand(kind)) {
+                stack.push(new TreeNode(tokens.text(index)));
+            } else if (kind == AlgebraicLexer.NEGATE) {
+                TreeNode operand = stack.pop();
+                stack.push(new TreeNode("-", null, operand));
+            } else {
+                TreeNode right = stack.pop();
+                TreeNode left = stack.pop();
+                stack.push(new TreeNode(AlgebraicLexer.symbol(kind), left, right));
+            }
+        }
+        return stack.pop();
+    }
+
+    /**
+     * Verifica si una cadena es un número (dígitos con un punto decimal opcional), sin usar expresiones regulares.
+     *
+     * @param token La cadena a verificar.
+     * @return true si es un número, false en caso contrario.
+     */
+    private static boolean isNumber(String token) {
+        if (token.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Verifica si una cadena es el nombre de una variable (letra o guion bajo seguidos de letras, dígitos o guiones bajos).
+     *
+     * @param token La cadena a verificar.
+     * @return true si es el nombre de una variable, false en caso contrario.
+     */
+    static boolean isVariable(String token) {
+        if (token.isEmpty() || !AlgebraicLexer.isIdentifierStart(token.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (!AlgebraicLexer.isIdentifierStart(c) && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Separa una cadena en los tokens delimitados por espacios en blanco, sin usar expresiones regulares.
+     *
+     * @param text La cadena a separar.
+     * @return Los tokens de la cadena.
+     */
+    private static String[] splitTokens(String text) {
+        String[] parts = new String[text.length() / 2 + 1];
+        int count = 0;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            while (i < length && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                parts[count++] = text.substring(start, i);
+            }
+        }
+        return Arrays.copyOf(parts, count);
     }
 
     /**
@@ -136,103 +326,262 @@ public class AlgebraicTree {
      * @return El nodo raíz del árbol de expresiones.
      */
     public static TreeNode postfixToTree(String postfix){
-        Stacks.Stack_LinkedList stack = new Stacks().new Stack_LinkedList();
-        for (String token : postfix.split("\\s+")){
-            if (token.matches("\\d+")){
+        Stacks.ArrayStack<TreeNode> stack = new Stacks.ArrayStack<>();
+        for (String token : splitTokens(postfix)){
+            if (isNumber(token) || isVariable(token)){
                 stack.push(new TreeNode(token));
             } else if (isOperator(token)){
-                TreeNode right = (TreeNode) stack.pop();
-                TreeNode left = (TreeNode) stack.pop();
+                TreeNode right = stack.pop();
+                TreeNode left = stack.pop();
                 stack.push(new TreeNode(token, left, right));
             }
         }
-        return (TreeNode) stack.pop();
+        return stack.pop();
     }
     /**
      * Evalúa el resultado de un árbol de expresiones algebraicas.
      *
+     * El árbol se recorre en postorden con pilas explícitas en lugar de recursión, así una expresión
+     * con cientos de miles de operadores anidados no desborda la pila de la JVM; la memoria usada es
+     * proporcional a la altura del árbol.
+     *
      * @param tree El árbol de expresiones a evaluar.
      * @return El resultado de la evaluación de la expresión.
      */
     public static float evaluate(TreeNode tree){
-        if (tree == null){
-            return 0;
-        } else if (tree.getLeft() == null && tree.getRight() == null){
-            return Float.parseFloat(tree.getElement());
-        } else {
-            float left = evaluate(tree.getLeft());
-            float right = evaluate(tree.getRight());
-            String operator = tree.getElement();
-            switch (operator){
-                case "+":
-                    return left + right;
-                case "-":
-                    return left - right;
-                case "*":
-                    return left * right;
-                case "/":
-                    if (right == 0){
-                        return -1;
-                    } else {
-                        return left / right;
-                    }
-                case "**":
-                    if(left<0){
-                        return -1;
-                    }
-                    else{
-                        return (float) Math.pow(left, right);
+        Stacks.ArrayStack<TreeNode> nodes = new Stacks.ArrayStack<>();
+        Stacks.IntStack states = new Stacks.IntStack();
+        Stacks.DoubleStack values = new Stacks.DoubleStack();
+        nodes.push(tree);
+        states.push(0);
+        while (!nodes.isEmpty()) {
+            TreeNode node = nodes.peek();
+            int state = states.pop();
+            if (node == null) {
+                nodes.pop();
+                values.push(0);
+            } else if (node.getLeft() == null && node.getRight() == null) {
+                nodes.pop();
+                values.push(Float.parseFloat(node.getElement()));
+            } else if (state < 2) {
+                // Estado 0: falta el hijo izquierdo; estado 1: falta el derecho; estado 2: se aplica el operador
+                states.push(state + 1);
+                nodes.push(state == 0 ? node.getLeft() : node.getRight());
+                states.push(0);
+            } else {
+                nodes.pop();
+                float right = (float) values.pop();
+                float left = (float) values.pop();
+                values.push(apply(node.getElement(), left, right));
+            }
+        }
+        return (float) values.pop();
+    }
 
-                    }
-                case "%":
-                    return left/100 * right;
-                default:
-                    return 0;
+    /**
+     * Aplica un operador binario en precisión simple.
+     *
+     * @param operator El operador.
+     * @param left     El operando izquierdo.
+     * @param right    El operando derecho.
+     * @return El resultado de la operación.
+     */
+    private static float apply(String operator, float left, float right) {
+        switch (operator){
+            case "+":
+                return left + right;
+            case "-":
+                return left - right;
+            case "*":
+                return left * right;
+            case "/":
+                if (right == 0){
+                    return -1;
+                } else {
+                    return left / right;
+                }
+            case "**":
+                if(left<0){
+                    return -1;
+                }
+                else{
+                    return (float) Math.pow(left, right);
+
+                }
+            case "%":
+                return left/100 * right;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Evalúa el resultado de un árbol de expresiones algebraicas en doble precisión, con la misma
+     * semántica que {@link #evaluate(TreeNode)} y el mismo recorrido sin recursión.
+     *
+     * @param tree El árbol de expresiones a evaluar.
+     * @return El resultado de la evaluación de la expresión.
+     */
+    public static double evaluateDouble(TreeNode tree) {
+        Stacks.ArrayStack<TreeNode> nodes = new Stacks.ArrayStack<>();
+        Stacks.IntStack states = new Stacks.IntStack();
+        Stacks.DoubleStack values = new Stacks.DoubleStack();
+        nodes.push(tree);
+        states.push(0);
+        while (!nodes.isEmpty()) {
+            TreeNode node = nodes.peek();
+            int state = states.pop();
+            if (node == null) {
+                nodes.pop();
+                values.push(0);
+            } else if (node.getLeft() == null && node.getRight() == null) {
+                nodes.pop();
+                values.push(Double.parseDouble(node.getElement()));
+            } else if (state < 2) {
+                states.push(state + 1);
+                nodes.push(state == 0 ? node.getLeft() : node.getRight());
+                states.push(0);
+            } else {
+                nodes.pop();
+                double right = values.pop();
+                double left = values.pop();
+                values.push(apply(node.getElement(), left, right));
             }
         }
+        return values.pop();
+    }
+
+    /**
+     * Aplica un operador binario en doble precisión.
+     *
+     * @param operator El operador.
+     * @param left     El operando izquierdo.
+     * @param right    El operando derecho.
+     * @return El resultado de la operación.
+     */
+    private static double apply(String operator, double left, double right) {
+        switch (operator) {
+            case "+":
+            case "-":
+            case "*":
+            case "/":
+            case "**":
+            case "%":
+                return AlgebraicProgram.apply(AlgebraicProgram.opcode(operator), left, right);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Evalúa el resultado de un árbol de expresiones algebraicas con precisión arbitraria.
+     *
+     * @param tree    El árbol de expresiones a evaluar.
+     * @param context La precisión y el redondeo de cada operación.
+     * @return El resultado de la evaluación de la expresión.
+     * @see DecimalEvaluator
+     */
+    public static BigDecimal evaluate(TreeNode tree, MathContext context) {
+        return new DecimalEvaluator(context).evaluate(tree);
     }
+
     /**
-     * Realiza un preprocesamiento de una expresión infix para facilitar su manipulación.
+     * Realiza un preprocesamiento de una expresión infix para facilitar su manipulación:
+     * separa los tokens con un espacio en una sola pasada del analizador léxico.
      *
      * @param infix La expresión infix a preprocesar.
      * @return La expresión infix preprocesada.
      */
     public static String preprocess(String infix) {
-        // Eliminar todos los espacios
-        String noSpaces = infix.replaceAll("\\s+", "");
-
-        // Reemplazar doble negativo con positivo
-        noSpaces = noSpaces.replaceAll("--", "");
-
-        // Detectar y cambiar el patrón a**(-b) a a**(0-b)
-        noSpaces = noSpaces.replaceAll("(\\d+)\\*\\*\\((-\\d+)\\)", "$1**(0$2)");
-
-        // Detectar y cambiar el patrón a*(-b) a - (a*b)
-        noSpaces = noSpaces.replaceAll("(\\([^)]+\\)|\\d+)\\*\\((-\\d+)\\)", "$1*(0$2)");
+        AlgebraicLexer.Tokens tokens = AlgebraicLexer.tokenize(infix);
+        StringBuilder builder = new StringBuilder(infix.length() * 2);
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(tokens.text(i));
+        }
+        return builder.toString();
+    }
 
-        // Añadir espacios alrededor de todos los operadores
-        String spaced = noSpaces.replaceAll("(\\*\\*|[+\\-*/()%^])", " $1 ");
+    /**
+     * Normaliza una expresión infix eliminando todos los espacios en blanco, sin usar expresiones regulares.
+     *
+     * @param infix La expresión infix a normalizar.
+     * @return La expresión sin espacios.
+     */
+    static String normalize(String infix) {
+        int length = infix.length();
+        StringBuilder normalized = null;
+        for (int i = 0; i < length; i++) {
+            char c = infix.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (normalized == null) {
+                    normalized = new StringBuilder(length);
+                    normalized.append(infix, 0, i);
+                }
+            } else if (normalized != null) {
+                normalized.append(c);
+            }
+        }
+        return normalized == null ? infix : normalized.toString();
+    }
 
-        // Eliminar espacios dobles
-        String cleaned = spaced.replaceAll("\\s+", " ").trim();
-        return cleaned;
+    /**
+     * Compila una expresión algebraica para poder evaluarla muchas veces sin repetir el
+     * preprocesamiento ni la construcción del árbol. Las compilaciones se guardan en una caché
+     * acotada que se lee sin candados, de modo que una expresión repetida se obtiene directamente de
+     * la caché aunque la pidan muchos hilos a la vez.
+     *
+     * @param exp La expresión algebraica a compilar.
+     * @return La expresión compilada.
+     * @throws IllegalArgumentException si la expresión está vacía.
+     */
+    public static CompiledExpression compile(String exp) {
+        String key = normalize(exp);
+        CompiledExpression compiled = cache.get(key);
+        if (compiled != null) {
+            return compiled;
+        }
+        long inicio = System.nanoTime();
+        TreeNode tree = parse(key);
+        compiled = new CompiledExpression(key, postfix(tree), tree, AlgebraicProgram.compile(tree));
+        ANALISIS.registrarDesde(inicio);
+        cache.put(key, compiled);
+        return compiled;
     }
 
     /**
-     * Calcula y devuelve el resultado de una expresión algebraica dada.
+     * Calcula y devuelve el resultado de una expresión algebraica dada en precisión simple, como en
+     * {@link CompiledExpression#evaluate()}.
      *
      * @param exp La expresión algebraica a evaluar.
      * @return El resultado de la expresión.
      */
     public float result(String exp){
-        String infix = exp;
-        //System.out.println("Infix: " + infix);
-        String postfix = infixToPostfix(infix);
-        //System.out.println("Postfix: " + postfix);
-        TreeNode tree = postfixToTree(postfix);
-        //System.out.println("Result: " + evaluate(tree));
-        return evaluate(tree);
+        return compile(exp).evaluate();
+    }
 
+    /**
+     * Calcula y devuelve el resultado de una expresión algebraica dada en doble precisión. Los redondeos
+     * intermedios son los de {@code double}, así que el resultado puede diferir de {@link #result(String)}.
+     *
+     * @param exp La expresión algebraica a evaluar.
+     * @return El resultado de la expresión.
+     */
+    public double resultDouble(String exp) {
+        return compile(exp).evaluateDouble();
+    }
+
+    /**
+     * Calcula y devuelve el resultado de una expresión algebraica dada con precisión arbitraria.
+     *
+     * @param exp     La expresión algebraica a evaluar.
+     * @param context La precisión y el redondeo de cada operación.
+     * @return El resultado de la expresión.
+     */
+    public BigDecimal result(String exp, MathContext context) {
+        return compile(exp).evaluate(context);
     }
 
     /**
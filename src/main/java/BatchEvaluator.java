@@ -0,0 +1,153 @@
+import java.util.Arrays;
+
+/**
+ * Esta clase evalúa una misma expresión compilada sobre muchas filas de valores a la vez.
+ * En lugar de recorrer el programa una vez por fila, ejecuta cada operación sobre un bloque
+ * completo de filas (columna por columna), con ciclos simples que el compilador JIT puede vectorizar.
+ */
+public final class BatchEvaluator {
+    /**
+     * Cantidad de filas que se procesan por bloque, pensada para que los registros quepan en caché.
+     */
+    static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Cantidad máxima de valores entre todos los registros (32 MiB). Un programa muy anidado necesita
+     * muchos registros; en ese caso los bloques se achican para no superar este límite.
+     */
+    static final int MAX_REGISTER_VALUES = 1 << 22;
+
+    private BatchEvaluator() {
+    }
+
+    /**
+     * Evalúa una expresión compilada para cada fila de las columnas dadas.
+     *
+     * @param expression La expresión compilada.
+     * @param columns    Una columna de valores por variable, en el orden de {@link CompiledExpression#getVariables()}.
+     * @param out        El arreglo donde se escribe el resultado de cada fila; su largo define la cantidad de filas.
+     * @throws IllegalArgumentException si la cantidad de columnas no coincide o alguna columna es más corta que {@code out}.
+     */
+    public static void evaluate(CompiledExpression expression, double[][] columns, double[] out) {
+        evaluate(expression.getProgram(), columns, out);
+    }
+
+    /**
+     * Evalúa un programa para cada fila de las columnas dadas.
+     *
+     * @param program El programa a evaluar.
+     * @param columns Una columna de valores por variable, en el orden de {@link AlgebraicProgram#getVariables()}.
+     * @param out     El arreglo donde se escribe el resultado de cada fila; su largo define la cantidad de filas.
+     * @throws IllegalArgumentException si la cantidad de columnas no coincide o alguna columna es más corta que {@code out}.
+     */
+    public static void evaluate(AlgebraicProgram program, double[][] columns, double[] out) {
+        int variables = program.getVariables().length;
+        if (columns.length != variables) {
+            throw new IllegalArgumentException("Se esperaban " + variables + " columnas y se recibieron " + columns.length);
+        }
+        for (double[] column : columns) {
+            if (column.length < out.length) {
+                throw new IllegalArgumentException("Las columnas deben tener al menos " + out.length + " filas");
+            }
+        }
+        int count = Math.max(1, program.getMaxStack());
+        int blockSize = Math.max(1, Math.min(BLOCK_SIZE, MAX_REGISTER_VALUES / count));
+        double[][] registers = new double[count][blockSize];
+        for (int offset = 0; offset < out.length; offset += blockSize) {
+            int rows = Math.min(blockSize, out.length - offset);
+            evaluateBlock(program.code(), program.constants(), program.localBase(), columns, offset, rows, registers);
+            System.arraycopy(registers[0], 0, out, offset, rows);
+        }
+    }
+
+    /**
+     * Ejecuta el programa sobre un bloque de filas, dejando el resultado en el primer registro.
+     *
+     * @param code      Los códigos de operación del programa.
+     * @param constants Las constantes del programa.
+     * @param base      El primer registro de las variables locales.
+     * @param columns   Las columnas de valores de las variables.
+     * @param offset    La primera fila del bloque.
+     * @param rows      La cantidad de filas del bloque.
+     * @param registers Un registro (columna temporal) por posición de la pila de operandos y por variable local.
+     */
+    private static void evaluateBlock(byte[] code, double[] constants, int base, double[][] columns, int offset, int rows,
+                                      double[][] registers) {
+        int top = -1;
+        int constant = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            byte op = code[pc];
+            if (op == AlgebraicProgram.CONST) {
+                Arrays.fill(registers[++top], 0, rows, constants[constant++]);
+            } else if (op == AlgebraicProgram.LOAD) {
+                System.arraycopy(columns[code[++pc] & 0xFF], offset, registers[++top], 0, rows);
+            } else if (op == AlgebraicProgram.STORE) {
+                System.arraycopy(registers[top], 0, registers[base + AlgebraicProgram.localSlot(code, pc)], 0, rows);
+                pc += 2;
+            } else if (op == AlgebraicProgram.LOCAL) {
+                System.arraycopy(registers[base + AlgebraicProgram.localSlot(code, pc)], 0, registers[++top], 0, rows);
+                pc += 2;
+            } else if (op == AlgebraicProgram.NEG) {
+                negate(registers[top], rows);
+            } else {
+                double[] right = registers[top--];
+                apply(op, registers[top], right, rows);
+            }
+        }
+    }
+
+    /**
+     * Cambia el signo de cada fila de un registro.
+     *
+     * @param values El registro.
+     * @param rows   La cantidad de filas.
+     */
+    private static void negate(double[] values, int rows) {
+        for (int i = 0; i < rows; i++) {
+            values[i] = 0 - values[i];
+        }
+    }
+
+    /**
+     * Aplica un operador binario fila por fila, dejando el resultado en el registro izquierdo.
+     * Cada operador tiene su propio ciclo para que el cuerpo no tenga saltos y pueda vectorizarse.
+     *
+     * @param op    El código de operación.
+     * @param left  El registro izquierdo, que recibe el resultado.
+     * @param right El registro derecho.
+     * @param rows  La cantidad de filas.
+     */
+    private static void apply(byte op, double[] left, double[] right, int rows) {
+        switch (op) {
+            case AlgebraicProgram.ADD:
+                for (int i = 0; i < rows; i++) {
+                    left[i] = left[i] + right[i];
+                }
+                break;
+            case AlgebraicProgram.SUB:
+                for (int i = 0; i < rows; i++) {
+                    left[i] = left[i] - right[i];
+                }
+                break;
+            case AlgebraicProgram.MUL:
+                for (int i = 0; i < rows; i++) {
+                    left[i] = left[i] * right[i];
+                }
+                break;
+            case AlgebraicProgram.DIV:
+                for (int i = 0; i < rows; i++) {
+                    left[i] = right[i] == 0 ? -1 : left[i] / right[i];
+                }
+                break;
+            case AlgebraicProgram.PERCENT:
+                for (int i = 0; i < rows; i++) {
+                    left[i] = left[i] / 100 * right[i];
+                }
+                break;
+            default:
+                for (int i = 0; i < rows; i++) {
+                    left[i] = AlgebraicProgram.apply(op, left[i], right[i]);
+                }
+        }
+    }
+}
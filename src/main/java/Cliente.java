@@ -10,11 +10,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.net.ServerSocket;
 import java.net.Socket;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
@@ -33,6 +34,8 @@ public class Cliente extends javax.swing.JFrame implements Runnable{
 
     Socket socket;
 
+    volatile DataOutputStream salida;
+
     int puerto = 0;
 
     public Cliente() {
@@ -960,10 +963,11 @@ public class Cliente extends javax.swing.JFrame implements Runnable{
         String exp = pantalla_alge.getText();
         System.out.println(exp);
         AlgebraicTree AA = new AlgebraicTree();
-        pantalla_alge.setText(Float.toString(AA.result(exp)));
+        String resultado = Float.toString(AA.result(exp));
+        pantalla_alge.setText(resultado);
         String currentDate = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss").format(new Date());
         try {
-            send(puerto+ ","+exp+","+Float.toString(AA.result(exp))+","+currentDate);
+            send(puerto+ ","+exp+","+resultado+","+currentDate);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -1192,13 +1196,21 @@ public class Cliente extends javax.swing.JFrame implements Runnable{
 
 
 
+    /**
+     * Envía un mensaje al servidor por la conexión persistente abierta en run().
+     *
+     * @param mensaje El mensaje a enviar.
+     * @throws IOException si todavía no hay conexión con el servidor o se perdió.
+     */
     public void send(String mensaje) throws IOException {
-        Socket socket = new Socket("127.0.0.1",6000);
-        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-        out.writeUTF(mensaje);
-        socket.close();
-
-
+        DataOutputStream out = salida;
+        if (out == null) {
+            throw new IOException("No hay conexión con el servidor");
+        }
+        synchronized (out) {
+            out.writeUTF(mensaje);
+            out.flush();
+        }
     }
 
 
@@ -1208,11 +1220,10 @@ public class Cliente extends javax.swing.JFrame implements Runnable{
      * Implementación del método run de la interfaz Runnable.
      * Este método se ejecuta en un hilo separado y realiza las siguientes acciones:
      *
-     * 1. Se conecta a un socket con un puerto libre y codifica ese puerto para enviarlo al servidor.
-     *    El puerto se codifica transformándolo en una cadena y añadiéndole un "0" al principio.
-     *    Luego, envía el puerto codificado al servidor para su almacenamiento (Ver Server.java).
+     * 1. Abre una única conexión con el servidor, que se mantiene durante toda la sesión.
+     *    El puerto local de esa conexión identifica al cliente en el historial.
      *
-     * 2. Crea un Socket para escuchar los mensajes que le envíe el servidor y los muestra en pantalla.
+     * 2. Lee por esa misma conexión los mensajes que le envíe el servidor.
      *
      * Este método se ejecuta en un bucle infinito para mantener la conexión y recibir mensajes continuamente.
      */
@@ -1222,31 +1233,21 @@ public class Cliente extends javax.swing.JFrame implements Runnable{
         try {
 
             /**
-             * Se conecta a un socket con un puerto libre, y luego codifica al puerto
-             * para enviarlo al servidor y que este lo guarde. Ver Server.java
-             *
-             * El puerto se codifica transformandolo en un string y añadiendole un "0"
-             * al principio.
+             * Se conecta al servidor una sola vez; los mensajes se envían por esta conexión
+             * con send() y las respuestas del servidor llegan por ella misma.
              */
-            ServerSocket server = new ServerSocket(0);
-            Socket socket = new Socket("127.0.0.1",6000);
-
-            puerto = server.getLocalPort();
-
+            socket = new Socket("127.0.0.1",6000);
+            socket.setTcpNoDelay(true);
 
-            String puerto_codificado = String.valueOf("0" + puerto);
+            puerto = socket.getLocalPort();
 
-            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-            out.writeUTF(puerto_codificado);
-            socket.close();
+            salida = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
 
             /**
-             * Crea un Socket para escuchar los mensajes que le envie el servidor, y luego
-             * los muestra en pantalla
+             * Lee los mensajes que le envie el servidor por la conexión abierta
              */
+            DataInputStream datos = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
             while(true){
-                Socket serversocker =  server.accept();
-                DataInputStream datos = new DataInputStream(serversocker.getInputStream());
                 String mensajes = datos.readUTF();
 
             }
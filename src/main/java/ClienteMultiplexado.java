@@ -0,0 +1,148 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Esta clase es un cliente sin interfaz del protocolo por tramas ({@link Protocolo}).
+ *
+ * Envía peticiones de evaluación por una sola conexión sin esperar las respuestas anteriores; cada
+ * petición devuelve un {@link CompletableFuture} que se completa cuando llega la respuesta con su
+ * identificador. La cantidad de peticiones en vuelo está limitada para no llenar la cola del servidor.
+ */
+public class ClienteMultiplexado implements Closeable {
+
+    /**
+     * Cantidad máxima de peticiones sin respuesta; al llegar a ella, {@link #evaluar} espera.
+     */
+    static final int MAX_EN_VUELO = 1024;
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final Map<Integer, CompletableFuture<String>> pendientes = new ConcurrentHashMap<Integer, CompletableFuture<String>>();
+    private final AtomicInteger siguienteId = new AtomicInteger();
+    private final Semaphore enVuelo = new Semaphore(MAX_EN_VUELO);
+    private final Thread lector;
+    private volatile IOException falla;
+
+    /**
+     * Se conecta a un servidor por tramas y empieza a leer sus respuestas.
+     *
+     * @param host   El host del servidor.
+     * @param puerto El puerto del servidor.
+     * @throws IOException si no se puede conectar.
+     */
+    public ClienteMultiplexado(String host, int puerto) throws IOException {
+        this.socket = new Socket(host, puerto);
+        socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.lector = new Thread(() -> leer(in), "cliente-multiplexado");
+        lector.setDaemon(true);
+        lector.start();
+    }
+
+    /**
+     * Envía una petición de evaluación sin esperar su respuesta.
+     *
+     * @param modo      {@code alge}, {@code logic} o {@code integral}.
+     * @param expresion La expresión; en el modo integral, {@code funcion;a;b}.
+     * @return El resultado, que falla con {@link IllegalArgumentException} si el servidor respondió
+     *         con un error o con {@link IOException} si la conexión se cerró.
+     * @throws IllegalArgumentException si el modo no existe.
+     */
+    public CompletableFuture<String> evaluar(String modo, String expresion) {
+        byte[] carga = Protocolo.peticion(modo, expresion);
+        CompletableFuture<String> futuro = new CompletableFuture<String>();
+        try {
+            enVuelo.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futuro.completeExceptionally(e);
+            return futuro;
+        }
+        int id = siguienteId.getAndIncrement();
+        pendientes.put(id, futuro);
+        // Si el lector ya terminó, no va a completar esta petición
+        IOException causa = falla;
+        if (causa != null) {
+            completar(id).completeExceptionally(causa);
+            return futuro;
+        }
+        try {
+            synchronized (out) {
+                Protocolo.escribir(out, Protocolo.EVALUAR, id, carga);
+                out.flush();
+            }
+        } catch (IOException e) {
+            completar(id).completeExceptionally(e);
+        }
+        return futuro;
+    }
+
+    /**
+     * Quita una petición de las pendientes y libera su lugar.
+     *
+     * @param id El identificador de la petición.
+     * @return El futuro de la petición, o uno nuevo si ya se había completado.
+     */
+    private CompletableFuture<String> completar(int id) {
+        CompletableFuture<String> futuro = pendientes.remove(id);
+        if (futuro == null) {
+            return new CompletableFuture<String>();
+        }
+        enVuelo.release();
+        return futuro;
+    }
+
+    /**
+     * Lee respuestas hasta que se cierre la conexión y completa el futuro de cada una. Al cerrarse,
+     * las peticiones que quedaron sin respuesta fallan, y también las que se envíen después.
+     *
+     * @param in El flujo de entrada de la conexión.
+     */
+    private void leer(DataInputStream in) {
+        IOException causa;
+        try {
+            while (true) {
+                Protocolo.Trama trama = Protocolo.leer(in);
+                CompletableFuture<String> futuro = completar(trama.id);
+                if (trama.tipo == Protocolo.RESULTADO) {
+                    futuro.complete(trama.texto(0));
+                } else {
+                    futuro.completeExceptionally(new IllegalArgumentException(trama.texto(0)));
+                }
+            }
+        } catch (IOException e) {
+            causa = e;
+        }
+        // Se publica antes de vaciar las pendientes: las peticiones que se registren después la ven
+        falla = causa;
+        for (Integer id : pendientes.keySet()) {
+            completar(id).completeExceptionally(causa);
+        }
+    }
+
+    /**
+     * Cierra la conexión; las peticiones sin respuesta fallan.
+     *
+     * @throws IOException si ocurre un error al cerrar el socket.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        try {
+            lector.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
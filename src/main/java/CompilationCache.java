@@ -0,0 +1,113 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Esta clase es una caché acotada de compilaciones indexada por el texto de la expresión, que se
+ * puede usar desde varios hilos sin un candado global.
+ *
+ * Las lecturas van directo a un {@link ConcurrentHashMap} y solo marcan la entrada como usada. Cuando
+ * una inserción supera la capacidad se desalojan entradas con el algoritmo del reloj: una manecilla
+ * recorre las entradas en círculo y conserva su posición entre un desalojo y el siguiente; una entrada
+ * marcada pierde su marca y sigue, una sin marca se quita. Las entradas nuevas llegan marcadas, así
+ * una entrada recién guardada o leída desde la última vuelta de la manecilla no se desaloja. Es una
+ * aproximación de LRU que no necesita reordenar nada en cada lectura; solo los desalojos se sincronizan.
+ *
+ * @param <V> El tipo de las compilaciones.
+ */
+final class CompilationCache<V> {
+
+    /**
+     * Clase interna que representa una compilación guardada con su marca de uso.
+     *
+     * @param <V> El tipo de la compilación.
+     */
+    private static final class Entry<V> {
+        final V value;
+        volatile boolean used;
+
+        /**
+         * Constructor de una entrada.
+         *
+         * @param value La compilación.
+         */
+        Entry(V value) {
+            this.value = value;
+            this.used = true;
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Entry<V>> entries;
+    private Iterator<Entry<V>> hand;
+
+    /**
+     * Constructor de una caché.
+     *
+     * @param capacity La cantidad máxima de compilaciones que se guardan.
+     */
+    CompilationCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<String, Entry<V>>(capacity * 2);
+    }
+
+    /**
+     * Obtiene una compilación guardada y la marca como usada.
+     *
+     * @param key El texto de la expresión.
+     * @return La compilación, o null si no está en la caché.
+     */
+    V get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        // Se escribe solo si hace falta, así los hilos que leen la misma entrada no compiten por ella
+        if (!entry.used) {
+            entry.used = true;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Guarda una compilación y, si la caché quedó llena, desaloja las que no se usaron recientemente.
+     *
+     * @param key   El texto de la expresión.
+     * @param value La compilación.
+     */
+    void put(String key, V value) {
+        if (entries.put(key, new Entry<V>(value)) == null && entries.size() > capacity) {
+            evict();
+        }
+    }
+
+    /**
+     * Quita entradas hasta volver a la capacidad, con el algoritmo del reloj. La manecilla sigue desde
+     * donde la dejó el desalojo anterior y vuelve al principio al terminar cada vuelta.
+     */
+    private synchronized void evict() {
+        while (entries.size() > capacity) {
+            if (hand == null || !hand.hasNext()) {
+                hand = entries.values().iterator();
+                if (!hand.hasNext()) {
+                    return;
+                }
+            }
+            Entry<V> entry = hand.next();
+            if (entry.used) {
+                entry.used = false;
+            } else {
+                hand.remove();
+            }
+        }
+    }
+
+    /**
+     * Obtiene la cantidad de compilaciones guardadas.
+     *
+     * @return La cantidad de compilaciones.
+     */
+    int size() {
+        return entries.size();
+    }
+}
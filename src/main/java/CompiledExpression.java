@@ -0,0 +1,148 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Esta clase representa una expresión algebraica ya compilada: la conversión a postfix y la
+ * construcción del árbol se hacen una sola vez y el resultado se puede evaluar muchas veces.
+ * Las instancias se pueden compartir entre hilos; el único estado que cambia es el último resultado
+ * de precisión arbitraria, que se publica de forma atómica.
+ */
+public final class CompiledExpression {
+    private final String infix;
+    private final String postfix;
+    private final AlgebraicTree.TreeNode tree;
+    private final AlgebraicProgram program;
+    private volatile DecimalResult decimal;
+
+    /**
+     * Constructor de una expresión compilada.
+     *
+     * @param infix   La expresión infix normalizada.
+     * @param postfix La expresión postfix equivalente.
+     * @param tree    El árbol de expresiones construido a partir del postfix.
+     * @param program El programa plano equivalente al árbol.
+     */
+    CompiledExpression(String infix, String postfix, AlgebraicTree.TreeNode tree, AlgebraicProgram program) {
+        this.infix = infix;
+        this.postfix = postfix;
+        this.tree = tree;
+        this.program = program;
+    }
+
+    /**
+     * Obtiene la expresión infix normalizada (sin espacios) que originó esta compilación.
+     *
+     * @return La expresión infix normalizada.
+     */
+    public String getInfix() {
+        return infix;
+    }
+
+    /**
+     * Obtiene la expresión postfix equivalente, calculada al compilar.
+     *
+     * @return La expresión postfix.
+     */
+    public String getPostfix() {
+        return postfix;
+    }
+
+    /**
+     * Obtiene el árbol de expresiones compilado. El árbol no debe modificarse.
+     *
+     * @return El nodo raíz del árbol de expresiones.
+     */
+    AlgebraicTree.TreeNode getTree() {
+        return tree;
+    }
+
+    /**
+     * Obtiene el programa plano equivalente, que se evalúa sobre una pila primitiva.
+     *
+     * @return El programa de la expresión.
+     */
+    public AlgebraicProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * Obtiene los nombres de las variables de la expresión, en el orden en que aparecen por primera vez.
+     *
+     * @return Una copia de los nombres de las variables.
+     */
+    public String[] getVariables() {
+        return program.getVariables();
+    }
+
+    /**
+     * Evalúa la expresión compilada en precisión simple. La expresión no debe tener variables; para
+     * evaluarla con valores se usa {@link #getProgram()} o {@link BatchEvaluator}.
+     *
+     * Cada operación se hace en {@code float} sobre el árbol, con la misma semántica que
+     * {@link AlgebraicTree#evaluate(AlgebraicTree.TreeNode)}: por ejemplo {@code 1/(0.1+0.2-0.3)} da
+     * {@code -1} porque el divisor es exactamente cero en precisión simple.
+     *
+     * @return El resultado de la expresión.
+     * @throws IllegalArgumentException si la expresión tiene variables.
+     */
+    public float evaluate() {
+        program.requireNoVariables();
+        return AlgebraicTree.evaluate(tree);
+    }
+
+    /**
+     * Evalúa la expresión compilada en doble precisión con el programa plano, sin reservar más que la
+     * pila de operandos. La expresión no debe tener variables.
+     *
+     * Es un camino aparte que hay que pedir de forma explícita: los redondeos intermedios son los de
+     * {@code double}, así que el resultado no siempre coincide con {@link #evaluate()} ni con el
+     * redondeo a {@code float} de este valor. {@code 1/(0.1+0.2-0.3)} da {@code -1} en precisión simple
+     * y cerca de {@code 1.8E16} aquí, porque en doble precisión el divisor no llega a cero.
+     *
+     * @return El resultado de la expresión.
+     * @throws IllegalArgumentException si la expresión tiene variables.
+     */
+    public double evaluateDouble() {
+        return program.evaluate();
+    }
+
+    /**
+     * Evalúa la expresión compilada con precisión arbitraria. La expresión no debe tener variables.
+     * El último resultado se guarda junto con su contexto, así evaluar otra vez con el mismo contexto
+     * no repite ninguna operación.
+     *
+     * @param context La precisión y el redondeo de cada operación.
+     * @return El resultado de la expresión.
+     * @throws ArithmeticException si el resultado no se puede representar con el contexto.
+     * @throws IllegalArgumentException si la expresión tiene variables.
+     * @see DecimalEvaluator
+     */
+    public BigDecimal evaluate(MathContext context) {
+        DecimalResult last = decimal;
+        if (last == null || !last.context.equals(context)) {
+            program.requireNoVariables();
+            last = new DecimalResult(context, new DecimalEvaluator(context).evaluate(tree));
+            decimal = last;
+        }
+        return last.value;
+    }
+
+    /**
+     * Clase interna que guarda un resultado de precisión arbitraria con el contexto que lo produjo.
+     */
+    private static final class DecimalResult {
+        final MathContext context;
+        final BigDecimal value;
+
+        /**
+         * Constructor de un resultado.
+         *
+         * @param context El contexto de la evaluación.
+         * @param value   El resultado.
+         */
+        DecimalResult(MathContext context, BigDecimal value) {
+            this.context = context;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Esta clase representa una expresión lógica ya compilada y optimizada, que se puede evaluar muchas
+ * veces sin volver a analizarla y sin escribir en la consola.
+ *
+ * Al compilar, las cadenas de un mismo operador asociativo ({@code a & b & c ...}) se aplanan en un
+ * solo nodo con varios hijos, los subárboles constantes se pliegan ({@code x & false} es
+ * {@code false}, {@code x | false} es {@code x}, {@code ~ ~ x} es {@code x}) y las hojas se resuelven
+ * una sola vez. Al evaluar, {@code &} y {@code |} se detienen en el primer hijo que decide el
+ * resultado, así una conjunción larga cuyo primer término es falso cuesta O(1).
+ *
+ * Las hojas que no son {@code true} ni {@code false} son variables; {@link #evaluate()} las toma como
+ * falsas, igual que {@link LogicTree#evaluate}. Las instancias son inmutables y se pueden compartir
+ * entre hilos.
+ */
+public final class CompiledLogicExpression {
+    private static final byte FALSE = 0;
+    private static final byte TRUE = 1;
+    private static final byte VARIABLE = 2;
+    private static final byte NOT = 3;
+    private static final byte AND = 4;
+    private static final byte OR = 5;
+    private static final byte XOR = 6;
+
+    private static final boolean[] NO_VALUES = new boolean[0];
+
+    /**
+     * Clase interna que representa un nodo de la expresión optimizada.
+     */
+    private static final class Node {
+        final byte op;
+        final int slot;
+        final Node[] children;
+
+        /**
+         * Constructor de un nodo.
+         *
+         * @param op       La operación del nodo.
+         * @param slot     La posición de la variable, si el nodo es una variable.
+         * @param children Los hijos del nodo.
+         */
+        Node(byte op, int slot, Node[] children) {
+            this.op = op;
+            this.slot = slot;
+            this.children = children;
+        }
+    }
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Node FALSE_NODE = new Node(FALSE, -1, NO_CHILDREN);
+    private static final Node TRUE_NODE = new Node(TRUE, -1, NO_CHILDREN);
+
+    private final Node root;
+    private final String[] variables;
+
+    /**
+     * Constructor de una expresión compilada.
+     *
+     * @param root      La raíz de la expresión optimizada.
+     * @param variables Los nombres de las variables, en el orden de sus posiciones.
+     */
+    private CompiledLogicExpression(Node root, String[] variables) {
+        this.root = root;
+        this.variables = variables;
+    }
+
+    /**
+     * Compila un árbol de expresiones lógicas, con la misma semántica que {@link LogicTree#evaluate}:
+     * un árbol vacío vale falso y un operador desconocido vale verdadero.
+     *
+     * @param tree El árbol a compilar.
+     * @return La expresión compilada.
+     */
+    public static CompiledLogicExpression compile(LogicTree.TreeNode tree) {
+        Map<String, Integer> slots = new LinkedHashMap<String, Integer>();
+        Node root = lower(tree, slots);
+        return new CompiledLogicExpression(root, slots.keySet().toArray(new String[0]));
+    }
+
+    /**
+     * Clase interna que representa un operador cuyos hijos se están traduciendo.
+     */
+    private static final class Frame {
+        final byte op;
+        final List<LogicTree.TreeNode> operands;
+        final List<Node> children = new ArrayList<Node>();
+        int next;
+        boolean negate;
+
+        /**
+         * Constructor de un operador pendiente.
+         *
+         * @param op       La operación del nodo.
+         * @param operands Los operandos del árbol, de izquierda a derecha.
+         */
+        Frame(byte op, List<LogicTree.TreeNode> operands) {
+            this.op = op;
+            this.operands = operands;
+        }
+    }
+
+    /**
+     * Traduce un árbol a un nodo optimizado. Los operadores pendientes se guardan en una pila
+     * explícita, así la profundidad de la expresión no está limitada por la pila de la JVM.
+     *
+     * @param tree  El árbol.
+     * @param slots Las posiciones de las variables encontradas.
+     * @return El nodo optimizado.
+     */
+    private static Node lower(LogicTree.TreeNode tree, Map<String, Integer> slots) {
+        Stacks.ArrayStack<Frame> frames = new Stacks.ArrayStack<Frame>();
+        Node lowered = start(tree, slots, frames);
+        while (true) {
+            if (lowered == null) {
+                // Empezó un operador: se traduce su primer operando
+                Frame frame = frames.peek();
+                lowered = start(frame.operands.get(frame.next++), slots, frames);
+                continue;
+            }
+            Frame frame = frames.peek();
+            if (frame == null) {
+                return lowered;
+            }
+            Node result = accept(frame, lowered);
+            if (result != null) {
+                frames.pop();
+                lowered = result;
+            } else {
+                lowered = start(frame.operands.get(frame.next++), slots, frames);
+            }
+        }
+    }
+
+    /**
+     * Empieza a traducir un nodo del árbol. Las hojas, los árboles vacíos y los operadores
+     * desconocidos se traducen de inmediato; los demás operadores se agregan a la pila.
+     *
+     * @param tree   El nodo del árbol.
+     * @param slots  Las posiciones de las variables encontradas.
+     * @param frames Los operadores pendientes.
+     * @return El nodo optimizado, o null si se agregó un operador a la pila.
+     */
+    private static Node start(LogicTree.TreeNode tree, Map<String, Integer> slots, Stacks.ArrayStack<Frame> frames) {
+        if (tree == null) {
+            return FALSE_NODE;
+        }
+        String data = tree.getElement();
+        if (tree.getLeft() == null && tree.getRight() == null) {
+            if (data.equalsIgnoreCase("true")) {
+                return TRUE_NODE;
+            }
+            if (data.equalsIgnoreCase("false")) {
+                return FALSE_NODE;
+            }
+            Integer slot = slots.get(data);
+            if (slot == null) {
+                slot = slots.size();
+                slots.put(data, slot);
+            }
+            return new Node(VARIABLE, slot, NO_CHILDREN);
+        }
+        switch (data) {
+            case "~":
+                List<LogicTree.TreeNode> operand = new ArrayList<LogicTree.TreeNode>(1);
+                operand.add(tree.getRight());
+                frames.push(new Frame(NOT, operand));
+                return null;
+            case "&":
+                frames.push(new Frame(AND, operands(tree, data)));
+                return null;
+            case "|":
+                frames.push(new Frame(OR, operands(tree, data)));
+                return null;
+            case "^":
+                frames.push(new Frame(XOR, operands(tree, data)));
+                return null;
+            default:
+                return TRUE_NODE;
+        }
+    }
+
+    /**
+     * Niega un nodo, plegando constantes y dobles negaciones.
+     *
+     * @param operand El nodo a negar.
+     * @return El nodo negado.
+     */
+    private static Node not(Node operand) {
+        switch (operand.op) {
+            case TRUE:
+                return FALSE_NODE;
+            case FALSE:
+                return TRUE_NODE;
+            case NOT:
+                return operand.children[0];
+            default:
+                return new Node(NOT, -1, new Node[]{operand});
+        }
+    }
+
+    /**
+     * Agrega un hijo ya traducido a un operador pendiente. Las cadenas de un mismo operador asociativo
+     * se aplanan en un solo nodo con varios hijos, en el orden de izquierda a derecha, y los hijos
+     * constantes se pliegan.
+     *
+     * @param frame El operador pendiente.
+     * @param child El hijo traducido.
+     * @return El nodo optimizado del operador si ya está completo, o null si faltan operandos.
+     */
+    private static Node accept(Frame frame, Node child) {
+        byte op = frame.op;
+        if (op == NOT) {
+            return not(child);
+        }
+        if (child.op == op) {
+            // Una subexpresión entre paréntesis con el mismo operador se aplana también
+            for (Node grandchild : child.children) {
+                frame.children.add(grandchild);
+            }
+        } else if (child.op == TRUE || child.op == FALSE) {
+            boolean value = child.op == TRUE;
+            if (op == AND && !value || op == OR && value) {
+                return child;
+            }
+            if (op == XOR && value) {
+                frame.negate = !frame.negate;
+            }
+        } else {
+            frame.children.add(child);
+        }
+        if (frame.next < frame.operands.size()) {
+            return null;
+        }
+        List<Node> children = frame.children;
+        Node result;
+        if (children.isEmpty()) {
+            result = op == AND ? TRUE_NODE : FALSE_NODE;
+        } else if (children.size() == 1) {
+            result = children.get(0);
+        } else {
+            result = new Node(op, -1, children.toArray(new Node[0]));
+        }
+        return frame.negate ? not(result) : result;
+    }
+
+    /**
+     * Obtiene los operandos de una cadena de un mismo operador, de izquierda a derecha. La cadena se
+     * recorre por el lado izquierdo sin recursión, que es el lado por donde crecen las cadenas largas.
+     *
+     * @param tree     El nodo donde empieza la cadena.
+     * @param operator El operador de la cadena.
+     * @return Los operandos.
+     */
+    private static List<LogicTree.TreeNode> operands(LogicTree.TreeNode tree, String operator) {
+        List<LogicTree.TreeNode> rights = new ArrayList<LogicTree.TreeNode>();
+        LogicTree.TreeNode node = tree;
+        while (node != null && operator.equals(node.getElement()) && (node.getLeft() != null || node.getRight() != null)) {
+            rights.add(node.getRight());
+            node = node.getLeft();
+        }
+        List<LogicTree.TreeNode> operands = new ArrayList<LogicTree.TreeNode>(rights.size() + 1);
+        operands.add(node);
+        for (int i = rights.size() - 1; i >= 0; i--) {
+            operands.add(rights.get(i));
+        }
+        return operands;
+    }
+
+    /**
+     * Obtiene los nombres de las variables, en el orden en que aparecen por primera vez.
+     *
+     * @return Una copia de los nombres de las variables.
+     */
+    public String[] getVariables() {
+        return variables.clone();
+    }
+
+    /**
+     * Indica si la expresión quedó reducida a una constante al compilarla.
+     *
+     * @return true si la expresión no depende de ninguna variable.
+     */
+    public boolean isConstant() {
+        return root.op == TRUE || root.op == FALSE;
+    }
+
+    /**
+     * Evalúa la expresión con todas las variables en falso.
+     *
+     * @return El resultado de la expresión.
+     */
+    public boolean evaluate() {
+        return evaluate(NO_VALUES);
+    }
+
+    /**
+     * Evalúa la expresión con los valores dados para las variables.
+     *
+     * @param values Los valores de las variables, en el orden de {@link #getVariables()}; las que
+     *               falten valen falso.
+     * @return El resultado de la expresión.
+     */
+    public boolean evaluate(boolean[] values) {
+        return evaluate(root, values);
+    }
+
+    /**
+     * Evalúa un nodo, deteniendo las conjunciones y disyunciones en cuanto se conoce el resultado.
+     * Los operadores pendientes se guardan en pilas explícitas en lugar de usar recursión.
+     *
+     * @param root   El nodo a evaluar.
+     * @param values Los valores de las variables.
+     * @return El valor del nodo.
+     */
+    private static boolean evaluate(Node root, boolean[] values) {
+        Stacks.ArrayStack<Node> pending = new Stacks.ArrayStack<Node>();
+        Stacks.IntStack positions = new Stacks.IntStack();
+        Stacks.IntStack parities = new Stacks.IntStack();
+        Node node = root;
+        while (true) {
+            // Baja por el primer hijo hasta una hoja
+            while (node.op >= NOT) {
+                pending.push(node);
+                positions.push(0);
+                parities.push(0);
+                node = node.children[0];
+            }
+            boolean result = node.op == TRUE || node.op == VARIABLE && node.slot < values.length && values[node.slot];
+            // Sube mientras el resultado decida a los operadores pendientes
+            while (true) {
+                Node parent = pending.peek();
+                if (parent == null) {
+                    return result;
+                }
+                int next = positions.pop() + 1;
+                int parity = parities.pop();
+                boolean done;
+                switch (parent.op) {
+                    case NOT:
+                        result = !result;
+                        done = true;
+                        break;
+                    case AND:
+                        done = !result || next == parent.children.length;
+                        break;
+                    case OR:
+                        done = result || next == parent.children.length;
+                        break;
+                    default:
+                        parity ^= result ? 1 : 0;
+                        result = parity == 1;
+                        done = next == parent.children.length;
+                        break;
+                }
+                if (done) {
+                    pending.pop();
+                } else {
+                    positions.push(next);
+                    parities.push(parity);
+                    node = parent.children[next];
+                    break;
+                }
+            }
+        }
+    }
+}
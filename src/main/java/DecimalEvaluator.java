@@ -0,0 +1,171 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Esta clase evalúa un árbol de expresiones algebraicas con {@link BigDecimal}, para obtener
+ * resultados exactos o con la cantidad de dígitos que indique un {@link MathContext}.
+ *
+ * Las hojas se leen sin pérdida ({@code 0.1} es exactamente una décima) y cada operación redondea su
+ * resultado según el contexto. La semántica de los operadores es la de {@link AlgebraicTree#evaluate}:
+ * la división entre cero y la potencia de base negativa dan -1 y {@code a % b} es {@code a/100 * b}.
+ * La potencia es exacta cuando el exponente es entero; con un exponente fraccionario se calcula en
+ * doble precisión y se redondea al contexto. Con {@link MathContext#UNLIMITED} una división cuyo
+ * resultado no tiene expansión decimal finita, como {@code 1/3}, lanza {@link ArithmeticException}.
+ *
+ * El valor de cada nodo evaluado se guarda por identidad, así las constantes y los operandos
+ * intermedios de un árbol que se evalúa varias veces, o de subárboles compartidos, se calculan una
+ * sola vez. Los árboles no deben modificarse mientras se usa el evaluador, y una instancia no debe
+ * compartirse entre hilos. El árbol se recorre sin recursión, así la profundidad de la expresión no
+ * está limitada por la pila de la JVM.
+ */
+public final class DecimalEvaluator {
+    private static final BigDecimal MINUS_ONE = BigDecimal.ONE.negate();
+    private static final int MAX_EXPONENT = 999999999;
+
+    private final MathContext context;
+    private final Map<AlgebraicTree.TreeNode, BigDecimal> values = new IdentityHashMap<>();
+
+    /**
+     * Constructor de un evaluador.
+     *
+     * @param context La precisión y el redondeo de cada operación.
+     */
+    public DecimalEvaluator(MathContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Obtiene el contexto con el que se redondean las operaciones.
+     *
+     * @return El contexto.
+     */
+    public MathContext getContext() {
+        return context;
+    }
+
+    /**
+     * Evalúa un árbol de expresiones algebraicas.
+     *
+     * @param tree El árbol a evaluar.
+     * @return El resultado de la expresión.
+     * @throws NumberFormatException si una hoja no es un número.
+     * @throws ArithmeticException   si el resultado no es un número finito, como {@code 0 ** -1}.
+     */
+    public BigDecimal evaluate(AlgebraicTree.TreeNode tree) {
+        Stacks.ArrayStack<AlgebraicTree.TreeNode> nodes = new Stacks.ArrayStack<>();
+        Stacks.IntStack states = new Stacks.IntStack();
+        Stacks.ArrayStack<BigDecimal> operands = new Stacks.ArrayStack<>();
+        nodes.push(tree);
+        states.push(0);
+        while (!nodes.isEmpty()) {
+            AlgebraicTree.TreeNode node = nodes.peek();
+            int state = states.pop();
+            BigDecimal value = node == null ? BigDecimal.ZERO : values.get(node);
+            if (value != null) {
+                nodes.pop();
+                operands.push(value);
+            } else if (node.getLeft() == null && node.getRight() == null) {
+                nodes.pop();
+                value = new BigDecimal(node.getElement());
+                values.put(node, value);
+                operands.push(value);
+            } else if (state < 2) {
+                // Estado 0: falta el hijo izquierdo; estado 1: falta el derecho; estado 2: se aplica el operador
+                states.push(state + 1);
+                nodes.push(state == 0 ? node.getLeft() : node.getRight());
+                states.push(0);
+            } else {
+                nodes.pop();
+                BigDecimal right = operands.pop();
+                BigDecimal left = operands.pop();
+                value = apply(node.getElement(), left, right);
+                values.put(node, value);
+                operands.push(value);
+            }
+        }
+        return operands.pop();
+    }
+
+    /**
+     * Aplica un operador binario con la semántica de {@link AlgebraicTree#evaluate}.
+     *
+     * @param operator El operador.
+     * @param left     El operando izquierdo.
+     * @param right    El operando derecho.
+     * @return El resultado de la operación redondeado al contexto.
+     */
+    BigDecimal apply(String operator, BigDecimal left, BigDecimal right) {
+        switch (operator) {
+            case "+":
+                return left.add(right, context);
+            case "-":
+                return left.subtract(right, context);
+            case "*":
+                return left.multiply(right, context);
+            case "/":
+                return right.signum() == 0 ? MINUS_ONE : left.divide(right, context);
+            case "**":
+                return left.signum() < 0 ? MINUS_ONE : power(left, right);
+            case "%":
+                return left.movePointLeft(2).multiply(right, context);
+            default:
+                return BigDecimal.ZERO;
+        }
+    }
+
+    /**
+     * Eleva una base no negativa a una potencia. Los exponentes enteros se calculan en decimal, así
+     * que con {@link MathContext#UNLIMITED} el resultado es exacto o se lanza una excepción; solo los
+     * exponentes con decimales o fuera del rango de {@link BigDecimal#pow(int, MathContext)} pasan
+     * por {@link Math#pow(double, double)}.
+     *
+     * @param base     La base.
+     * @param exponent El exponente.
+     * @return La potencia redondeada al contexto.
+     * @throws ArithmeticException si la potencia no se puede representar con el contexto.
+     */
+    private BigDecimal power(BigDecimal base, BigDecimal exponent) {
+        if (exponent.signum() == 0) {
+            return BigDecimal.ONE;
+        }
+        if (base.signum() == 0) {
+            if (exponent.signum() < 0) {
+                throw new ArithmeticException("Cero elevado a una potencia negativa");
+            }
+            return BigDecimal.ZERO;
+        }
+        int n;
+        try {
+            n = exponent.intValueExact();
+        } catch (ArithmeticException e) {
+            return approximatePower(base, exponent);
+        }
+        // pow(int, MathContext) acepta exponentes de hasta 999999999 en valor absoluto
+        if (n < -MAX_EXPONENT || n > MAX_EXPONENT) {
+            return approximatePower(base, exponent);
+        }
+        if (n < 0 && context.getPrecision() == 0) {
+            // Sin límite de precisión pow no acepta exponentes negativos: el inverso es exacto o lanza
+            return BigDecimal.ONE.divide(base.pow(-n), context);
+        }
+        return base.pow(n, context);
+    }
+
+    /**
+     * Calcula una potencia en doble precisión, para los exponentes que no se pueden hacer en decimal.
+     *
+     * @param base     La base.
+     * @param exponent El exponente.
+     * @return La potencia redondeada al contexto.
+     * @throws ArithmeticException si la potencia no es un número finito.
+     */
+    private BigDecimal approximatePower(BigDecimal base, BigDecimal exponent) {
+        double power = Math.pow(base.doubleValue(), exponent.doubleValue());
+        if (!Double.isFinite(power)) {
+            throw new ArithmeticException("La potencia no es un número finito");
+        }
+        return new BigDecimal(Double.toString(power)).round(context);
+    }
+}
@@ -0,0 +1,581 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Esta clase es un motor de diagramas de decisión binarios reducidos y ordenados (ROBDD) para
+ * expresiones lógicas.
+ *
+ * Un diagrama representa una función booleana de forma canónica: para un orden de variables fijo,
+ * dos expresiones equivalentes producen exactamente el mismo nodo, así que comparar expresiones es
+ * comparar dos enteros. Los nodos se guardan en arreglos paralelos y se identifican por su índice;
+ * los índices 0 y 1 son las hojas falso y verdadero. Cada nodo se crea una sola vez gracias a una
+ * tabla única (hash-consing), y los resultados de las operaciones se recuerdan en una caché, así las
+ * subfórmulas compartidas se calculan una sola vez.
+ *
+ * Las variables se ordenan según su primera aparición. Un mismo motor se puede usar para varias
+ * expresiones, que comparten nodos y variables. Las instancias no son seguras entre hilos.
+ */
+public class DiagramaDecision {
+
+    /** La hoja falso. */
+    public static final int FALSO = 0;
+    /** La hoja verdadero. */
+    public static final int VERDADERO = 1;
+
+    private static final byte Y = 1;
+    private static final byte O = 2;
+    private static final byte O_EXCLUSIVO = 3;
+    private static final byte NO = 4;
+
+    /**
+     * Cantidad de entradas de la caché de operaciones; una entrada nueva reemplaza a la anterior.
+     */
+    static final int TAMANO_CACHE = 1 << 16;
+
+    /**
+     * Cantidad máxima de caracteres de la expresión que escribe {@link #expresion(int)}.
+     */
+    static final int MAX_EXPRESION = 1 << 20;
+
+    private int[] variable = new int[1024];
+    private int[] bajo = new int[1024];
+    private int[] alto = new int[1024];
+    private int cantidad = 2;
+
+    private int[] tablaUnica = new int[2048];
+
+    private final byte[] cacheOperacion = new byte[TAMANO_CACHE];
+    private final int[] cacheA = new int[TAMANO_CACHE];
+    private final int[] cacheB = new int[TAMANO_CACHE];
+    private final int[] cacheResultado = new int[TAMANO_CACHE];
+
+    private final Map<String, Integer> variables = new LinkedHashMap<String, Integer>();
+
+    /**
+     * Crea un motor vacío, con solo las dos hojas.
+     */
+    public DiagramaDecision() {
+        variable[FALSO] = Integer.MAX_VALUE;
+        variable[VERDADERO] = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Obtiene el nodo de una variable, registrándola al final del orden si es nueva.
+     *
+     * @param nombre El nombre de la variable.
+     * @return El nodo que vale lo mismo que la variable.
+     */
+    public int variable(String nombre) {
+        Integer posicion = variables.get(nombre);
+        if (posicion == null) {
+            posicion = variables.size();
+            variables.put(nombre, posicion);
+        }
+        return nodo(posicion, FALSO, VERDADERO);
+    }
+
+    /**
+     * Obtiene los nombres de las variables, en su orden.
+     *
+     * @return Los nombres de las variables.
+     */
+    public String[] getVariables() {
+        return variables.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Obtiene o crea el nodo {@code (variable, bajo, alto)}. Si ambas ramas son iguales el nodo es
+     * redundante y se devuelve la rama.
+     *
+     * @param v La posición de la variable.
+     * @param b El nodo cuando la variable es falsa.
+     * @param a El nodo cuando la variable es verdadera.
+     * @return El nodo único.
+     */
+    private int nodo(int v, int b, int a) {
+        if (b == a) {
+            return b;
+        }
+        int mascara = tablaUnica.length - 1;
+        int i = hash(v, b, a) & mascara;
+        while (tablaUnica[i] != 0) {
+            int n = tablaUnica[i];
+            if (variable[n] == v && bajo[n] == b && alto[n] == a) {
+                return n;
+            }
+            i = (i + 1) & mascara;
+        }
+        if (cantidad == variable.length) {
+            variable = Arrays.copyOf(variable, cantidad * 2);
+            bajo = Arrays.copyOf(bajo, cantidad * 2);
+            alto = Arrays.copyOf(alto, cantidad * 2);
+        }
+        int n = cantidad++;
+        variable[n] = v;
+        bajo[n] = b;
+        alto[n] = a;
+        tablaUnica[i] = n;
+        if (cantidad * 2 > tablaUnica.length) {
+            redimensionarTabla();
+        }
+        return n;
+    }
+
+    /**
+     * Duplica la tabla única y vuelve a insertar todos los nodos.
+     */
+    private void redimensionarTabla() {
+        tablaUnica = new int[tablaUnica.length * 2];
+        int mascara = tablaUnica.length - 1;
+        for (int n = 2; n < cantidad; n++) {
+            int i = hash(variable[n], bajo[n], alto[n]) & mascara;
+            while (tablaUnica[i] != 0) {
+                i = (i + 1) & mascara;
+            }
+            tablaUnica[i] = n;
+        }
+    }
+
+    /**
+     * Mezcla tres enteros en un hash.
+     *
+     * @param x El primer entero.
+     * @param y El segundo entero.
+     * @param z El tercer entero.
+     * @return El hash.
+     */
+    private static int hash(int x, int y, int z) {
+        int h = x * 0x9E3779B1 + y;
+        h = h * 0x85EBCA6B + z;
+        return h ^ (h >>> 15);
+    }
+
+    /**
+     * Calcula la conjunción de dos nodos.
+     *
+     * @param a El primer nodo.
+     * @param b El segundo nodo.
+     * @return El nodo de {@code a & b}.
+     */
+    public int y(int a, int b) {
+        return aplicar(Y, a, b);
+    }
+
+    /**
+     * Calcula la disyunción de dos nodos.
+     *
+     * @param a El primer nodo.
+     * @param b El segundo nodo.
+     * @return El nodo de {@code a | b}.
+     */
+    public int o(int a, int b) {
+        return aplicar(O, a, b);
+    }
+
+    /**
+     * Calcula la disyunción exclusiva de dos nodos.
+     *
+     * @param a El primer nodo.
+     * @param b El segundo nodo.
+     * @return El nodo de {@code a ^ b}.
+     */
+    public int oExclusivo(int a, int b) {
+        return aplicar(O_EXCLUSIVO, a, b);
+    }
+
+    /**
+     * Calcula la negación de un nodo.
+     *
+     * @param a El nodo.
+     * @return El nodo de {@code ~ a}.
+     */
+    public int no(int a) {
+        if (a <= VERDADERO) {
+            return VERDADERO - a;
+        }
+        int i = indiceCache(NO, a, 0);
+        if (cacheOperacion[i] == NO && cacheA[i] == a) {
+            return cacheResultado[i];
+        }
+        int r = nodo(variable[a], no(bajo[a]), no(alto[a]));
+        guardarCache(i, NO, a, 0, r);
+        return r;
+    }
+
+    /**
+     * Aplica una operación binaria a dos nodos, resolviendo primero los casos triviales y después
+     * recorriendo ambos diagramas por la variable menor.
+     *
+     * @param op La operación.
+     * @param a  El primer nodo.
+     * @param b  El segundo nodo.
+     * @return El nodo del resultado.
+     */
+    private int aplicar(byte op, int a, int b) {
+        switch (op) {
+            case Y:
+                if (a == FALSO || b == FALSO) {
+                    return FALSO;
+                }
+                if (a == VERDADERO || a == b) {
+                    return b;
+                }
+                if (b == VERDADERO) {
+                    return a;
+                }
+                break;
+            case O:
+                if (a == VERDADERO || b == VERDADERO) {
+                    return VERDADERO;
+                }
+                if (a == FALSO || a == b) {
+                    return b;
+                }
+                if (b == FALSO) {
+                    return a;
+                }
+                break;
+            default:
+                if (a == b) {
+                    return FALSO;
+                }
+                if (a == FALSO) {
+                    return b;
+                }
+                if (b == FALSO) {
+                    return a;
+                }
+                if (a == VERDADERO) {
+                    return no(b);
+                }
+                if (b == VERDADERO) {
+                    return no(a);
+                }
+                break;
+        }
+        // Las tres operaciones son conmutativas: se ordenan los operandos para aprovechar la caché
+        if (a > b) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        int i = indiceCache(op, a, b);
+        if (cacheOperacion[i] == op && cacheA[i] == a && cacheB[i] == b) {
+            return cacheResultado[i];
+        }
+        int v = Math.min(variable[a], variable[b]);
+        int a0 = variable[a] == v ? bajo[a] : a;
+        int a1 = variable[a] == v ? alto[a] : a;
+        int b0 = variable[b] == v ? bajo[b] : b;
+        int b1 = variable[b] == v ? alto[b] : b;
+        int r = nodo(v, aplicar(op, a0, b0), aplicar(op, a1, b1));
+        guardarCache(i, op, a, b, r);
+        return r;
+    }
+
+    /**
+     * Calcula la posición de una operación en la caché.
+     *
+     * @param op La operación.
+     * @param a  El primer nodo.
+     * @param b  El segundo nodo.
+     * @return La posición en la caché.
+     */
+    private static int indiceCache(byte op, int a, int b) {
+        return hash(op, a, b) & (TAMANO_CACHE - 1);
+    }
+
+    /**
+     * Guarda el resultado de una operación en la caché, reemplazando lo que hubiera en esa posición.
+     *
+     * @param i  La posición en la caché.
+     * @param op La operación.
+     * @param a  El primer nodo.
+     * @param b  El segundo nodo.
+     * @param r  El resultado.
+     */
+    private void guardarCache(int i, byte op, int a, int b, int r) {
+        cacheOperacion[i] = op;
+        cacheA[i] = a;
+        cacheB[i] = b;
+        cacheResultado[i] = r;
+    }
+
+    /**
+     * Construye el diagrama de una expresión lógica infix.
+     *
+     * @param infix La expresión, con los tokens separados por espacios.
+     * @return El nodo raíz.
+     */
+    public int construir(String infix) {
+        return construir(LogicTree.postfixToTree(LogicTree.infixToPostfix(infix)));
+    }
+
+    /**
+     * Construye el diagrama de un árbol de expresiones lógicas, con la misma semántica que
+     * {@link LogicTree#evaluate}: un árbol vacío vale falso, un operador desconocido vale verdadero y
+     * las hojas que no son {@code true} ni {@code false} son variables. El árbol se recorre con pilas
+     * explícitas, así la profundidad de la expresión no está limitada por la pila de la JVM.
+     *
+     * @param arbol El árbol.
+     * @return El nodo raíz.
+     */
+    public int construir(LogicTree.TreeNode arbol) {
+        Stacks.ArrayStack<LogicTree.TreeNode> nodos = new Stacks.ArrayStack<>();
+        Stacks.IntStack estados = new Stacks.IntStack();
+        Stacks.IntStack resultados = new Stacks.IntStack();
+        nodos.push(arbol);
+        estados.push(0);
+        while (!nodos.isEmpty()) {
+            LogicTree.TreeNode nodo = nodos.peek();
+            int estado = estados.pop();
+            if (nodo == null) {
+                nodos.pop();
+                resultados.push(FALSO);
+                continue;
+            }
+            String dato = nodo.getElement();
+            if (nodo.getLeft() == null && nodo.getRight() == null) {
+                nodos.pop();
+                if (dato.equalsIgnoreCase("true")) {
+                    resultados.push(VERDADERO);
+                } else if (dato.equalsIgnoreCase("false")) {
+                    resultados.push(FALSO);
+                } else {
+                    resultados.push(variable(dato));
+                }
+                continue;
+            }
+            boolean negacion = dato.equals("~");
+            if (!negacion && !dato.equals("&") && !dato.equals("|") && !dato.equals("^")) {
+                nodos.pop();
+                resultados.push(VERDADERO);
+                continue;
+            }
+            // Estado 0: falta el hijo izquierdo; estado 1: falta el derecho; estado 2: se aplica el operador.
+            // La negación solo tiene hijo derecho.
+            if (estado == 0 && negacion) {
+                estado = 1;
+            }
+            if (estado < 2) {
+                estados.push(estado + 1);
+                nodos.push(estado == 0 ? nodo.getLeft() : nodo.getRight());
+                estados.push(0);
+                continue;
+            }
+            nodos.pop();
+            int b = resultados.pop();
+            if (negacion) {
+                resultados.push(no(b));
+                continue;
+            }
+            int a = resultados.pop();
+            switch (dato) {
+                case "&":
+                    resultados.push(y(a, b));
+                    break;
+                case "|":
+                    resultados.push(o(a, b));
+                    break;
+                default:
+                    resultados.push(oExclusivo(a, b));
+                    break;
+            }
+        }
+        return resultados.pop();
+    }
+
+    /**
+     * Indica si alguna asignación hace verdadera la función.
+     *
+     * @param f El nodo de la función.
+     * @return true si la función es satisfacible.
+     */
+    public boolean satisfacible(int f) {
+        return f != FALSO;
+    }
+
+    /**
+     * Indica si dos funciones son equivalentes. Como el diagrama es canónico, basta comparar los nodos.
+     *
+     * @param f El nodo de la primera función.
+     * @param g El nodo de la segunda función.
+     * @return true si las funciones son iguales para toda asignación.
+     */
+    public boolean equivalentes(int f, int g) {
+        return f == g;
+    }
+
+    /**
+     * Evalúa la función en una asignación, bajando por un solo camino del diagrama: el costo depende
+     * de la cantidad de variables, no del tamaño de la expresión.
+     *
+     * @param f       El nodo de la función.
+     * @param valores Los valores de las variables, en el orden de {@link #getVariables()}; las que
+     *                falten valen falso.
+     * @return El valor de la función.
+     */
+    public boolean evaluar(int f, boolean[] valores) {
+        int n = f;
+        while (n > VERDADERO) {
+            int v = variable[n];
+            n = v < valores.length && valores[v] ? alto[n] : bajo[n];
+        }
+        return n == VERDADERO;
+    }
+
+    /**
+     * Busca una asignación que haga verdadera la función.
+     *
+     * @param f El nodo de la función.
+     * @return Los valores de las variables, en el orden de {@link #getVariables()}, o null si la
+     *         función no es satisfacible.
+     */
+    public boolean[] asignacion(int f) {
+        if (f == FALSO) {
+            return null;
+        }
+        boolean[] valores = new boolean[variables.size()];
+        int n = f;
+        while (n > VERDADERO) {
+            if (bajo[n] != FALSO) {
+                n = bajo[n];
+            } else {
+                valores[variable[n]] = true;
+                n = alto[n];
+            }
+        }
+        return valores;
+    }
+
+    /**
+     * Cuenta las asignaciones de todas las variables del motor que hacen verdadera la función.
+     *
+     * @param f El nodo de la función.
+     * @return La cantidad de asignaciones.
+     */
+    public BigInteger contarSatisfacciones(int f) {
+        return contar(f, new HashMap<Integer, BigInteger>()).shiftLeft(nivel(f));
+    }
+
+    /**
+     * Cuenta las asignaciones de las variables desde el nivel de un nodo hasta el final.
+     *
+     * @param n     El nodo.
+     * @param memo  Los conteos ya calculados.
+     * @return La cantidad de asignaciones.
+     */
+    private BigInteger contar(int n, Map<Integer, BigInteger> memo) {
+        if (n <= VERDADERO) {
+            return n == VERDADERO ? BigInteger.ONE : BigInteger.ZERO;
+        }
+        BigInteger conteo = memo.get(n);
+        if (conteo == null) {
+            int v = variable[n];
+            conteo = contar(bajo[n], memo).shiftLeft(nivel(bajo[n]) - v - 1)
+                    .add(contar(alto[n], memo).shiftLeft(nivel(alto[n]) - v - 1));
+            memo.put(n, conteo);
+        }
+        return conteo;
+    }
+
+    /**
+     * Obtiene el nivel de un nodo; las hojas están debajo de la última variable.
+     *
+     * @param n El nodo.
+     * @return El nivel.
+     */
+    private int nivel(int n) {
+        return n <= VERDADERO ? variables.size() : variable[n];
+    }
+
+    /**
+     * Cuenta los nodos internos alcanzables desde un nodo.
+     *
+     * @param f El nodo.
+     * @return La cantidad de nodos internos del diagrama.
+     */
+    public int tamano(int f) {
+        boolean[] visitados = new boolean[cantidad];
+        int[] pendientes = new int[cantidad];
+        int tope = 0;
+        int total = 0;
+        pendientes[tope++] = f;
+        while (tope > 0) {
+            int n = pendientes[--tope];
+            if (n <= VERDADERO || visitados[n]) {
+                continue;
+            }
+            visitados[n] = true;
+            total++;
+            pendientes[tope++] = bajo[n];
+            pendientes[tope++] = alto[n];
+        }
+        return total;
+    }
+
+    /**
+     * Escribe la función como una expresión lógica, con los tokens separados por espacios, que se
+     * puede volver a evaluar con {@link LogicTree}. Las ramas triviales se simplifican, así la
+     * expresión suele ser más corta que la original cuando esta es redundante.
+     *
+     * La expresión no tiene forma de compartir subexpresiones: un nodo al que llegan varias ramas se
+     * escribe una vez por cada camino. En el peor caso el texto crece de forma exponencial con la
+     * cantidad de variables aunque el diagrama sea chico; la paridad de N variables, por ejemplo, tiene
+     * 2N - 1 nodos y una expresión de más de 2^N caracteres. Por eso el texto se limita a
+     * {@link #MAX_EXPRESION} caracteres.
+     *
+     * @param f El nodo de la función.
+     * @return La expresión.
+     * @throws IllegalArgumentException si la expresión tendría más de {@link #MAX_EXPRESION} caracteres.
+     */
+    public String expresion(int f) {
+        return expresion(f, getVariables(), new HashMap<Integer, String>());
+    }
+
+    /**
+     * Escribe un nodo como expresión, recordando las que ya se escribieron.
+     *
+     * @param n       El nodo.
+     * @param nombres Los nombres de las variables.
+     * @param memo    Las expresiones ya escritas.
+     * @return La expresión.
+     */
+    private String expresion(int n, String[] nombres, Map<Integer, String> memo) {
+        if (n <= VERDADERO) {
+            return n == VERDADERO ? "true" : "false";
+        }
+        String texto = memo.get(n);
+        if (texto != null) {
+            return texto;
+        }
+        String x = nombres[variable[n]];
+        int b = bajo[n];
+        int a = alto[n];
+        if (b == FALSO && a == VERDADERO) {
+            texto = x;
+        } else if (b == VERDADERO && a == FALSO) {
+            texto = "~ " + x;
+        } else if (a == VERDADERO) {
+            texto = "( " + x + " | " + expresion(b, nombres, memo) + " )";
+        } else if (b == FALSO) {
+            texto = "( " + x + " & " + expresion(a, nombres, memo) + " )";
+        } else if (a == FALSO) {
+            texto = "( ~ " + x + " & " + expresion(b, nombres, memo) + " )";
+        } else if (b == VERDADERO) {
+            texto = "( ~ " + x + " | " + expresion(a, nombres, memo) + " )";
+        } else {
+            texto = "( ( " + x + " & " + expresion(a, nombres, memo) + " ) | ( ~ " + x + " & "
+                    + expresion(b, nombres, memo) + " ) )";
+        }
+        // Cada nodo a lo sumo duplica el texto de sus hijos, así se corta antes de reservar mucho más del límite
+        if (texto.length() > MAX_EXPRESION) {
+            throw new IllegalArgumentException("La expresión tendría más de " + MAX_EXPRESION + " caracteres");
+        }
+        memo.put(n, texto);
+        return texto;
+    }
+}
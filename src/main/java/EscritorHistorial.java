@@ -0,0 +1,327 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Esta clase escribe el historial de mensajes en segundo plano.
+ * Los registros entran por una cola acotada y un hilo propio los escribe por lotes en un único canal
+ * que se mantiene abierto, en lugar de abrir el archivo en cada mensaje. Si la cola está llena, quien
+ * registra espera un tiempo máximo y después el registro se descarta; ambas situaciones se cuentan.
+ * Desde que empieza {@link #close()} los registros nuevos se rechazan, y los que ya estaban en la cola
+ * se escriben antes de cerrar el archivo.
+ */
+public class EscritorHistorial implements Historial {
+
+    /**
+     * Encabezado que se escribe cuando el archivo está vacío.
+     */
+    static final String ENCABEZADO = "Puerto,Expresion,Resultado,Fecha";
+
+    /**
+     * Cantidad máxima de registros que se escriben en un mismo lote.
+     */
+    static final int MAX_LOTE = 4096;
+
+    private static final Metricas.Histograma ESCRITURA = Metricas.histograma("historial.escritura");
+
+    /**
+     * Cuándo se fuerzan los datos al disco con {@link FileChannel#force(boolean)}.
+     */
+    public enum PoliticaFsync {
+        /** Nunca; el sistema operativo decide cuándo escribir al disco. */
+        NUNCA,
+        /** Después de cada lote. */
+        CADA_LOTE,
+        /** Como mucho una vez por intervalo de escritura. */
+        PERIODICA
+    }
+
+    private final FileChannel canal;
+    private final BlockingQueue<String> cola;
+    private final long intervaloNanos;
+    private final long esperaMaximaMillis;
+    private final PoliticaFsync politica;
+    private final Thread hilo;
+    private volatile boolean cerrando;
+    private long ultimoFsync = System.nanoTime();
+
+    private final LongAdder recibidos = new LongAdder();
+    private final LongAdder escritos = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+    private final LongAdder esperas = new LongAdder();
+    private final LongAdder lotes = new LongAdder();
+
+    /**
+     * Crea un escritor con la configuración por defecto o la de las propiedades de sistema
+     * {@code historial.cola}, {@code historial.intervalo} (milisegundos), {@code historial.espera}
+     * (milisegundos) y {@code historial.fsync} (NUNCA, CADA_LOTE o PERIODICA).
+     *
+     * @param archivo El archivo del historial.
+     * @return El escritor.
+     * @throws IOException si no se puede abrir el archivo.
+     */
+    public static EscritorHistorial desdePropiedades(Path archivo) throws IOException {
+        return desdePropiedades(archivo, 5);
+    }
+
+    /**
+     * Crea un escritor con la configuración de las propiedades de sistema, como
+     * {@link #desdePropiedades(Path)}, pero con otra espera por defecto cuando la cola está llena.
+     *
+     * @param archivo      El archivo del historial.
+     * @param esperaMillis La espera en milisegundos si {@code historial.espera} no está definida.
+     * @return El escritor.
+     * @throws IOException si no se puede abrir el archivo.
+     */
+    public static EscritorHistorial desdePropiedades(Path archivo, long esperaMillis) throws IOException {
+        return new EscritorHistorial(archivo,
+                Integer.getInteger("historial.cola", 65536),
+                Long.getLong("historial.intervalo", 10),
+                Long.getLong("historial.espera", esperaMillis),
+                PoliticaFsync.valueOf(System.getProperty("historial.fsync", PoliticaFsync.PERIODICA.name())));
+    }
+
+    /**
+     * Crea un escritor y arranca su hilo.
+     *
+     * @param archivo            El archivo del historial; se crea si no existe y se escribe al final.
+     * @param capacidadCola      La cantidad máxima de registros en espera.
+     * @param intervaloMillis    El tiempo máximo que un registro espera en la cola antes de escribirse;
+     *                           durante ese tiempo se juntan los registros que lleguen en un mismo lote.
+     *                           Se usa al menos un milisegundo para que el hilo no gire sin esperar.
+     * @param esperaMaximaMillis El tiempo que {@link #registrar(String)} espera si la cola está llena, o 0 para no esperar.
+     * @param politica           Cuándo forzar los datos al disco.
+     * @throws IOException si no se puede abrir el archivo.
+     */
+    public EscritorHistorial(Path archivo, int capacidadCola, long intervaloMillis, long esperaMaximaMillis,
+                             PoliticaFsync politica) throws IOException {
+        this.canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.cola = new ArrayBlockingQueue<String>(capacidadCola);
+        this.intervaloNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervaloMillis));
+        this.esperaMaximaMillis = esperaMaximaMillis;
+        this.politica = politica;
+        if (canal.size() == 0) {
+            escribirCompleto(ByteBuffer.wrap((ENCABEZADO + System.lineSeparator()).getBytes(StandardCharsets.UTF_8)));
+        }
+        this.hilo = new Thread(this::escribirLotes, "escritor-historial");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Encola un registro para escribirlo. Si la cola está llena espera como mucho el tiempo configurado.
+     *
+     * @param linea La línea a agregar al historial.
+     * @return true si el registro se encoló, false si se descartó o el escritor se está cerrando.
+     */
+    @Override
+    public boolean registrar(String linea) {
+        recibidos.increment();
+        if (cerrando) {
+            descartados.increment();
+            return false;
+        }
+        boolean encolado = cola.offer(linea);
+        if (!encolado) {
+            esperas.increment();
+            try {
+                encolado = esperaMaximaMillis > 0 && cola.offer(linea, esperaMaximaMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Si close() empezó mientras se encolaba, su último vaciado puede no ver el registro:
+        // se retira de la cola; si ya no está, lo tomó el escritor y se va a escribir
+        if (encolado && (!cerrando || !cola.remove(linea))) {
+            return true;
+        }
+        descartados.increment();
+        return false;
+    }
+
+    /**
+     * Ciclo del hilo escritor: junta los registros de cada intervalo en un lote y lo escribe de una vez.
+     */
+    private void escribirLotes() {
+        List<String> lote = new ArrayList<String>();
+        StringBuilder texto = new StringBuilder();
+        while (!cerrando || !cola.isEmpty()) {
+            try {
+                String primero = cola.poll(intervaloNanos, TimeUnit.NANOSECONDS);
+                if (primero == null) {
+                    fsyncPeriodico();
+                    continue;
+                }
+                lote.add(primero);
+                long limite = System.nanoTime() + intervaloNanos;
+                while (lote.size() < MAX_LOTE && !cerrando) {
+                    cola.drainTo(lote, MAX_LOTE - lote.size());
+                    long restante = limite - System.nanoTime();
+                    if (lote.size() >= MAX_LOTE || restante <= 0) {
+                        break;
+                    }
+                    String siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+                    if (siguiente == null) {
+                        break;
+                    }
+                    lote.add(siguiente);
+                }
+                cola.drainTo(lote, MAX_LOTE - lote.size());
+            } catch (InterruptedException e) {
+                cerrando = true;
+            }
+            escribirLote(lote, texto);
+        }
+    }
+
+    /**
+     * Escribe un lote de registros de una vez y lo vacía.
+     *
+     * @param lote  Los registros a escribir.
+     * @param texto Búfer de texto que se reutiliza entre lotes.
+     */
+    private void escribirLote(List<String> lote, StringBuilder texto) {
+        if (lote.isEmpty()) {
+            return;
+        }
+        String separador = System.lineSeparator();
+        texto.setLength(0);
+        for (String linea : lote) {
+            texto.append(linea).append(separador);
+        }
+        long inicio = System.nanoTime();
+        try {
+            escribirCompleto(ByteBuffer.wrap(texto.toString().getBytes(StandardCharsets.UTF_8)));
+            escritos.add(lote.size());
+            lotes.increment();
+            if (politica == PoliticaFsync.CADA_LOTE) {
+                canal.force(false);
+            } else {
+                fsyncPeriodico();
+            }
+            ESCRITURA.registrarDesde(inicio);
+        } catch (IOException e) {
+            descartados.add(lote.size());
+            System.out.println(e);
+        }
+        lote.clear();
+    }
+
+    /**
+     * Fuerza los datos al disco si la política es periódica y ya pasó un intervalo desde la última vez.
+     */
+    private void fsyncPeriodico() {
+        if (politica == PoliticaFsync.PERIODICA && System.nanoTime() - ultimoFsync >= intervaloNanos) {
+            try {
+                canal.force(false);
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+            ultimoFsync = System.nanoTime();
+        }
+    }
+
+    /**
+     * Escribe todo el contenido de un búfer en el canal.
+     *
+     * @param buffer Los bytes a escribir.
+     * @throws IOException si ocurre un error de escritura.
+     */
+    private void escribirCompleto(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+    }
+
+    /**
+     * Obtiene la cantidad de registros recibidos, incluidos los descartados.
+     *
+     * @return Registros recibidos.
+     */
+    public long getRecibidos() {
+        return recibidos.sum();
+    }
+
+    /**
+     * Obtiene la cantidad de registros escritos en el archivo.
+     *
+     * @return Registros escritos.
+     */
+    public long getEscritos() {
+        return escritos.sum();
+    }
+
+    /**
+     * Obtiene la cantidad de registros descartados por tener la cola llena o por errores de escritura.
+     *
+     * @return Registros descartados.
+     */
+    public long getDescartados() {
+        return descartados.sum();
+    }
+
+    /**
+     * Obtiene la cantidad de veces que un registro encontró la cola llena y tuvo que esperar.
+     *
+     * @return Esperas por contrapresión.
+     */
+    public long getEsperas() {
+        return esperas.sum();
+    }
+
+    /**
+     * Obtiene la cantidad de lotes escritos.
+     *
+     * @return Lotes escritos.
+     */
+    public long getLotes() {
+        return lotes.sum();
+    }
+
+    /**
+     * Obtiene la cantidad de registros que esperan en la cola.
+     *
+     * @return Registros pendientes.
+     */
+    public int getPendientes() {
+        return cola.size();
+    }
+
+    /**
+     * Escribe los registros pendientes, fuerza los datos al disco y cierra el archivo.
+     *
+     * @throws IOException si ocurre un error al cerrar.
+     */
+    @Override
+    public void close() throws IOException {
+        cerrando = true;
+        try {
+            hilo.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Registros que entraron mientras el hilo terminaba
+        List<String> resto = new ArrayList<String>();
+        cola.drainTo(resto);
+        escribirLote(resto, new StringBuilder());
+        if (politica != PoliticaFsync.NUNCA) {
+            canal.force(false);
+        }
+        canal.close();
+    }
+
+    @Override
+    public String toString() {
+        return "recibidos=" + getRecibidos() + " escritos=" + getEscritos() + " descartados=" + getDescartados()
+                + " esperas=" + getEsperas() + " lotes=" + getLotes() + " pendientes=" + getPendientes();
+    }
+}
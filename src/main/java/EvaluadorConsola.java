@@ -0,0 +1,254 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Esta clase evalúa expresiones desde la consola, sin interfaz gráfica.
+ *
+ * Lee una expresión por línea de un archivo o de la entrada estándar, las evalúa en varios hilos y
+ * escribe un resultado por línea, en el mismo orden, en un archivo o en la salida estándar. Las
+ * líneas se reparten en bloques y solo una ventana limitada de bloques está en proceso a la vez, así
+ * la memoria usada no depende del tamaño de la entrada. Al terminar se muestran las estadísticas en
+ * la salida de error.
+ *
+ * <pre>
+ * java EvaluadorConsola [-modo alge|logic|integral] [-hilos N] [-entrada archivo] [-salida archivo]
+ * </pre>
+ * Una expresión inválida produce la línea {@code error: mensaje}.
+ */
+public class EvaluadorConsola {
+
+    /**
+     * Cantidad de líneas que evalúa cada tarea.
+     */
+    static final int BLOQUE = 256;
+
+    /**
+     * Cantidad de bloques en proceso por cada hilo.
+     */
+    static final int BLOQUES_POR_HILO = 4;
+
+    private final String modo;
+    private final int hilos;
+    private long lineas;
+    private long errores;
+
+    /**
+     * Crea un evaluador de consola.
+     *
+     * @param modo  {@code alge}, {@code logic} o {@code integral}.
+     * @param hilos La cantidad de hilos que evalúan.
+     * @throws IllegalArgumentException si la cantidad de hilos no es positiva.
+     */
+    public EvaluadorConsola(String modo, int hilos) {
+        if (hilos <= 0) {
+            throw new IllegalArgumentException("La cantidad de hilos debe ser positiva: " + hilos);
+        }
+        this.modo = modo;
+        this.hilos = hilos;
+    }
+
+    /**
+     * Evalúa todas las líneas de la entrada y escribe los resultados en la salida, en orden.
+     *
+     * @param entrada La entrada, una expresión por línea.
+     * @param salida  La salida, un resultado por línea.
+     * @throws IOException si falla la lectura o la escritura.
+     */
+    public void procesar(BufferedReader entrada, Writer salida) throws IOException {
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        ArrayDeque<Future<String[]>> ventana = new ArrayDeque<Future<String[]>>();
+        int maxVentana = hilos * BLOQUES_POR_HILO;
+        try {
+            List<String> bloque = new ArrayList<String>(BLOQUE);
+            String linea;
+            while ((linea = entrada.readLine()) != null) {
+                bloque.add(linea);
+                if (bloque.size() == BLOQUE) {
+                    String[] expresiones = bloque.toArray(new String[0]);
+                    ventana.add(ejecutor.submit(() -> evaluar(expresiones)));
+                    bloque.clear();
+                    if (ventana.size() == maxVentana) {
+                        escribir(ventana.poll(), salida);
+                    }
+                }
+            }
+            if (!bloque.isEmpty()) {
+                String[] expresiones = bloque.toArray(new String[0]);
+                ventana.add(ejecutor.submit(() -> evaluar(expresiones)));
+            }
+            while (!ventana.isEmpty()) {
+                escribir(ventana.poll(), salida);
+            }
+            salida.flush();
+        } finally {
+            ejecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Evalúa un bloque de expresiones.
+     *
+     * @param expresiones Las expresiones.
+     * @return Los resultados, o {@code error: mensaje} para las expresiones inválidas o demasiado profundas.
+     */
+    private String[] evaluar(String[] expresiones) {
+        String[] resultados = new String[expresiones.length];
+        for (int i = 0; i < expresiones.length; i++) {
+            try {
+                resultados[i] = ServicioEvaluacion.evaluar(modo, expresiones[i]);
+            } catch (RuntimeException e) {
+                resultados[i] = "error: " + (e.getMessage() == null ? e.toString() : e.getMessage());
+            } catch (StackOverflowError e) {
+                // Una línea con demasiado anidamiento no debe terminar el bloque ni el proceso
+                resultados[i] = "error: expresión demasiado profunda";
+            }
+        }
+        return resultados;
+    }
+
+    /**
+     * Espera un bloque y escribe sus resultados.
+     *
+     * @param bloque El bloque en proceso.
+     * @param salida La salida.
+     * @throws IOException si falla la escritura o la evaluación se interrumpió.
+     */
+    private void escribir(Future<String[]> bloque, Writer salida) throws IOException {
+        String[] resultados;
+        try {
+            resultados = bloque.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Evaluación interrumpida", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        for (String resultado : resultados) {
+            if (resultado.startsWith("error: ")) {
+                errores++;
+            }
+            salida.write(resultado);
+            salida.write('\n');
+        }
+        lineas += resultados.length;
+    }
+
+    /**
+     * Obtiene la cantidad de líneas evaluadas.
+     *
+     * @return La cantidad de líneas.
+     */
+    public long getLineas() {
+        return lineas;
+    }
+
+    /**
+     * Obtiene la cantidad de líneas que no se pudieron evaluar.
+     *
+     * @return La cantidad de errores.
+     */
+    public long getErrores() {
+        return errores;
+    }
+
+    /**
+     * Método principal de la clase.
+     *
+     * @param args Las opciones {@code -modo}, {@code -hilos}, {@code -entrada} y {@code -salida}.
+     */
+    public static void main(String[] args) {
+        String uso = "Uso: EvaluadorConsola [-modo alge|logic|integral] [-hilos N] [-entrada archivo] [-salida archivo]";
+        if (args.length % 2 != 0) {
+            System.err.println(uso);
+            return;
+        }
+        String modo = "alge";
+        int hilos = Runtime.getRuntime().availableProcessors();
+        String entrada = null;
+        String salida = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-modo":
+                    modo = args[i + 1];
+                    break;
+                case "-hilos":
+                    try {
+                        hilos = Integer.parseInt(args[i + 1]);
+                    } catch (NumberFormatException e) {
+                        hilos = 0;
+                    }
+                    if (hilos <= 0) {
+                        System.err.println("-hilos debe ser un entero positivo: " + args[i + 1]);
+                        System.err.println(uso);
+                        return;
+                    }
+                    break;
+                case "-entrada":
+                    entrada = args[i + 1];
+                    break;
+                case "-salida":
+                    salida = args[i + 1];
+                    break;
+                default:
+                    System.err.println("Opción desconocida: " + args[i]);
+                    return;
+            }
+        }
+        EvaluadorConsola evaluador = new EvaluadorConsola(modo, hilos);
+        long inicio = System.nanoTime();
+        try {
+            if (entrada == null) {
+                // La entrada estándar no se cierra; solo se deja de leer
+                BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16);
+                evaluador.procesar(in, salida);
+            } else {
+                try (BufferedReader in = Files.newBufferedReader(Paths.get(entrada), StandardCharsets.UTF_8)) {
+                    evaluador.procesar(in, salida);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(e);
+            return;
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        System.err.printf("%d expresiones, %d errores, %.3f s, %.0f expresiones/s, %d hilos%n",
+                evaluador.getLineas(), evaluador.getErrores(), segundos, evaluador.getLineas() / segundos, hilos);
+    }
+
+    /**
+     * Evalúa la entrada y escribe en un archivo o, si no se indica, en la salida estándar.
+     * La salida estándar solo se vacía al terminar: cerrarla dejaría a la JVM sin {@code System.out}.
+     *
+     * @param entrada La entrada, una expresión por línea.
+     * @param salida  La ruta del archivo de salida, o null para la salida estándar.
+     * @throws IOException si falla la lectura o la escritura.
+     */
+    private void procesar(BufferedReader entrada, String salida) throws IOException {
+        if (salida == null) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            try {
+                procesar(entrada, out);
+            } finally {
+                out.flush();
+            }
+        } else {
+            try (Writer out = Files.newBufferedWriter(Paths.get(salida), StandardCharsets.UTF_8)) {
+                procesar(entrada, out);
+            }
+        }
+    }
+}
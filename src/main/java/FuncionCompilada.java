@@ -0,0 +1,503 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Representa una función de {@code x} compilada una sola vez a partir de su texto.
+ * El texto se analiza con un analizador descendente recursivo y se traduce a una composición de
+ * operadores primitivos, de modo que cada evaluación trabaja solo con {@code double}, sin construir
+ * cadenas ni volver a analizar la expresión. Acepta la misma sintaxis que se usaba con javaluator:
+ * {@code + - * / % ^}, paréntesis, las constantes {@code pi} y {@code e}, las funciones de un argumento,
+ * {@code min}, {@code max}, {@code sum} y {@code avg} con uno o más argumentos y {@code random()}.
+ * Como en javaluator, {@code ^} es asociativa a la izquierda ({@code 2^3^2} vale 64) y tiene más
+ * prioridad que el signo ({@code -2^2} vale -4).
+ * Las instancias son inmutables y se pueden evaluar desde varios hilos a la vez.
+ */
+public final class FuncionCompilada implements DoubleUnaryOperator {
+    private final String expresion;
+    private final DoubleUnaryOperator funcion;
+
+    /**
+     * Constructor de una función compilada.
+     *
+     * @param expresion Texto original de la función.
+     * @param funcion Composición de operadores que calcula la función.
+     */
+    private FuncionCompilada(String expresion, DoubleUnaryOperator funcion) {
+        this.expresion = expresion;
+        this.funcion = funcion;
+    }
+
+    /**
+     * Compila el texto de una función de {@code x}.
+     *
+     * @param expresion Texto de la función, por ejemplo {@code x^3 + 1}.
+     * @return La función compilada.
+     * @throws IllegalArgumentException si el texto no es una función válida.
+     */
+    public static FuncionCompilada compilar(String expresion) {
+        Analizador analizador = new Analizador(expresion);
+        Nodo raiz = analizador.expresion();
+        analizador.saltarEspacios();
+        if (analizador.posicion < expresion.length()) {
+            throw analizador.error("Carácter inesperado");
+        }
+        return new FuncionCompilada(expresion, raiz.operador());
+    }
+
+    /**
+     * Obtiene el texto original de la función.
+     *
+     * @return Texto de la función.
+     */
+    public String getExpresion() {
+        return expresion;
+    }
+
+    /**
+     * Evalúa la función en un valor de {@code x}.
+     *
+     * @param x Valor de la variable.
+     * @return Resultado de la función.
+     */
+    @Override
+    public double applyAsDouble(double x) {
+        return funcion.applyAsDouble(x);
+    }
+
+    /**
+     * Nodo intermedio del análisis: una función de {@code x} que además sabe si es constante,
+     * para poder calcular de antemano las partes que no dependen de {@code x}.
+     */
+    private static final class Nodo {
+        private final DoubleUnaryOperator operador;
+        private final boolean constante;
+
+        /**
+         * Constructor de un nodo.
+         *
+         * @param operador Función que calcula el nodo.
+         * @param constante true si el nodo no depende de {@code x}.
+         */
+        Nodo(DoubleUnaryOperator operador, boolean constante) {
+            this.operador = operador;
+            this.constante = constante;
+        }
+
+        /**
+         * Crea un nodo constante.
+         *
+         * @param valor Valor del nodo.
+         * @return El nodo constante.
+         */
+        static Nodo constante(double valor) {
+            return new Nodo(x -> valor, true);
+        }
+
+        /**
+         * Obtiene la función que calcula el nodo.
+         *
+         * @return Función de {@code x}.
+         */
+        DoubleUnaryOperator operador() {
+            return operador;
+        }
+
+        /**
+         * Aplica una función de un argumento a este nodo.
+         *
+         * @param f Función a aplicar.
+         * @return El nodo resultante.
+         */
+        Nodo aplicar(DoubleUnaryOperator f) {
+            if (constante) {
+                return constante(f.applyAsDouble(operador.applyAsDouble(0)));
+            }
+            DoubleUnaryOperator a = operador;
+            return new Nodo(x -> f.applyAsDouble(a.applyAsDouble(x)), false);
+        }
+
+        /**
+         * Combina este nodo con otro mediante una función de dos argumentos.
+         *
+         * @param f Función a aplicar.
+         * @param otro Nodo del segundo argumento.
+         * @return El nodo resultante.
+         */
+        Nodo aplicar(DoubleBinaryOperator f, Nodo otro) {
+            if (constante && otro.constante) {
+                return constante(f.applyAsDouble(operador.applyAsDouble(0), otro.operador.applyAsDouble(0)));
+            }
+            DoubleUnaryOperator a = operador;
+            DoubleUnaryOperator b = otro.operador;
+            return new Nodo(x -> f.applyAsDouble(a.applyAsDouble(x), b.applyAsDouble(x)), false);
+        }
+
+        /**
+         * Combina este nodo con otro mediante un operador binario.
+         *
+         * @param op Operador binario.
+         * @param otro Nodo derecho.
+         * @return El nodo resultante.
+         */
+        Nodo combinar(char op, Nodo otro) {
+            if (constante && otro.constante) {
+                return constante(calcular(op, operador.applyAsDouble(0), otro.operador.applyAsDouble(0)));
+            }
+            DoubleUnaryOperator a = operador;
+            DoubleUnaryOperator b = otro.operador;
+            switch (op) {
+                case '+':
+                    return new Nodo(x -> a.applyAsDouble(x) + b.applyAsDouble(x), false);
+                case '-':
+                    return new Nodo(x -> a.applyAsDouble(x) - b.applyAsDouble(x), false);
+                case '*':
+                    return new Nodo(x -> a.applyAsDouble(x) * b.applyAsDouble(x), false);
+                case '/':
+                    return new Nodo(x -> a.applyAsDouble(x) / b.applyAsDouble(x), false);
+                default:
+                    return new Nodo(x -> calcular(op, a.applyAsDouble(x), b.applyAsDouble(x)), false);
+            }
+        }
+
+        /**
+         * Calcula un operador binario.
+         *
+         * @param op Operador binario.
+         * @param izq Operando izquierdo.
+         * @param der Operando derecho.
+         * @return Resultado de la operación.
+         */
+        static double calcular(char op, double izq, double der) {
+            switch (op) {
+                case '+':
+                    return izq + der;
+                case '-':
+                    return izq - der;
+                case '*':
+                    return izq * der;
+                case '/':
+                    return izq / der;
+                case '%':
+                    return izq % der;
+                case '^':
+                    return Math.pow(izq, der);
+                default:
+                    return 0.0;
+            }
+        }
+    }
+
+    /**
+     * Analizador descendente recursivo de la función. Cada método corresponde a un nivel de precedencia.
+     */
+    private static final class Analizador {
+        private final String texto;
+        private int posicion;
+
+        /**
+         * Constructor del analizador.
+         *
+         * @param texto Texto a analizar.
+         */
+        Analizador(String texto) {
+            this.texto = texto;
+        }
+
+        /**
+         * Crea la excepción de un error de sintaxis en la posición actual.
+         *
+         * @param mensaje Descripción del error.
+         * @return La excepción.
+         */
+        IllegalArgumentException error(String mensaje) {
+            return new IllegalArgumentException(mensaje + " en la posición " + posicion + " de \"" + texto + "\"");
+        }
+
+        /**
+         * Avanza sobre los espacios en blanco.
+         */
+        void saltarEspacios() {
+            while (posicion < texto.length() && Character.isWhitespace(texto.charAt(posicion))) {
+                posicion++;
+            }
+        }
+
+        /**
+         * Consume un carácter si es el siguiente.
+         *
+         * @param c Carácter esperado.
+         * @return true si se consumió, false en caso contrario.
+         */
+        boolean consumir(char c) {
+            saltarEspacios();
+            if (posicion < texto.length() && texto.charAt(posicion) == c) {
+                posicion++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * expresion := termino (('+' | '-') termino)*
+         *
+         * @return El nodo de la expresión.
+         */
+        Nodo expresion() {
+            Nodo nodo = termino();
+            while (true) {
+                if (consumir('+')) {
+                    nodo = nodo.combinar('+', termino());
+                } else if (consumir('-')) {
+                    nodo = nodo.combinar('-', termino());
+                } else {
+                    return nodo;
+                }
+            }
+        }
+
+        /**
+         * termino := unario (('*' | '/' | '%') unario)*
+         *
+         * @return El nodo del término.
+         */
+        Nodo termino() {
+            Nodo nodo = unario();
+            while (true) {
+                if (consumir('*')) {
+                    nodo = nodo.combinar('*', unario());
+                } else if (consumir('/')) {
+                    nodo = nodo.combinar('/', unario());
+                } else if (consumir('%')) {
+                    nodo = nodo.combinar('%', unario());
+                } else {
+                    return nodo;
+                }
+            }
+        }
+
+        /**
+         * unario := ('-' | '+') unario | potencia
+         *
+         * @return El nodo del operando.
+         */
+        Nodo unario() {
+            if (consumir('-')) {
+                return unario().aplicar(v -> -v);
+            }
+            if (consumir('+')) {
+                return unario();
+            }
+            return potencia();
+        }
+
+        /**
+         * potencia := primario ('^' exponente)*  (asociativa a la izquierda, como en javaluator)
+         *
+         * @return El nodo de la potencia.
+         */
+        Nodo potencia() {
+            Nodo nodo = primario();
+            while (consumir('^')) {
+                nodo = nodo.combinar('^', exponente());
+            }
+            return nodo;
+        }
+
+        /**
+         * exponente := ('-' | '+') unario | primario
+         * Un signo aplica a toda la potencia que le sigue, así {@code 2^-3^2} es {@code 2^(-(3^2))}.
+         *
+         * @return El nodo del exponente.
+         */
+        Nodo exponente() {
+            if (consumir('-')) {
+                return unario().aplicar(v -> -v);
+            }
+            if (consumir('+')) {
+                return unario();
+            }
+            return primario();
+        }
+
+        /**
+         * primario := numero | 'x' | constante | funcion '(' argumentos ')' | '(' expresion ')'
+         *
+         * @return El nodo del operando.
+         */
+        Nodo primario() {
+            saltarEspacios();
+            if (consumir('(')) {
+                Nodo nodo = expresion();
+                if (!consumir(')')) {
+                    throw error("Falta ')'");
+                }
+                return nodo;
+            }
+            if (posicion >= texto.length()) {
+                throw error("Falta un operando");
+            }
+            char c = texto.charAt(posicion);
+            if (Character.isDigit(c) || c == '.') {
+                int inicio = posicion;
+                while (posicion < texto.length() && (Character.isDigit(texto.charAt(posicion)) || texto.charAt(posicion) == '.')) {
+                    posicion++;
+                }
+                try {
+                    return Nodo.constante(Double.parseDouble(texto.substring(inicio, posicion)));
+                } catch (NumberFormatException e) {
+                    throw error("Número inválido");
+                }
+            }
+            if (Character.isLetter(c)) {
+                int inicio = posicion;
+                while (posicion < texto.length() && Character.isLetterOrDigit(texto.charAt(posicion))) {
+                    posicion++;
+                }
+                return identificador(texto.substring(inicio, posicion));
+            }
+            throw error("Carácter inesperado");
+        }
+
+        /**
+         * Resuelve la variable, una constante o una llamada a función.
+         *
+         * @param nombre Nombre leído.
+         * @return El nodo correspondiente.
+         */
+        Nodo identificador(String nombre) {
+            switch (nombre) {
+                case "x":
+                    return new Nodo(x -> x, false);
+                case "pi":
+                    return Nodo.constante(Math.PI);
+                case "e":
+                    return Nodo.constante(Math.E);
+                default:
+                    break;
+            }
+            if (nombre.equals("random")) {
+                if (!consumir('(') || !consumir(')')) {
+                    throw error("random no recibe argumentos");
+                }
+                // Se sortea en cada evaluación; el generador de cada hilo evita la contención del modo paralelo
+                return new Nodo(x -> ThreadLocalRandom.current().nextDouble(), false);
+            }
+            DoubleBinaryOperator acumulador = funcionVariadica(nombre);
+            if (acumulador != null) {
+                List<Nodo> argumentos = argumentos(nombre);
+                Nodo nodo = argumentos.get(0);
+                for (int i = 1; i < argumentos.size(); i++) {
+                    nodo = nodo.aplicar(acumulador, argumentos.get(i));
+                }
+                if (nombre.equals("avg")) {
+                    double cantidad = argumentos.size();
+                    nodo = nodo.aplicar(v -> v / cantidad);
+                }
+                return nodo;
+            }
+            DoubleUnaryOperator unaria = funcionUnaria(nombre);
+            if (unaria == null) {
+                throw error("Identificador desconocido '" + nombre + "'");
+            }
+            if (!consumir('(')) {
+                throw error("Falta '(' después de " + nombre);
+            }
+            Nodo argumento = expresion();
+            if (!consumir(')')) {
+                throw error("Falta ')'");
+            }
+            return argumento.aplicar(unaria);
+        }
+
+        /**
+         * Obtiene una función de un argumento por su nombre.
+         *
+         * @param nombre Nombre de la función.
+         * @return La función o null si no existe.
+         */
+        static DoubleUnaryOperator funcionUnaria(String nombre) {
+            switch (nombre) {
+                case "abs":
+                    return Math::abs;
+                case "ceil":
+                    return Math::ceil;
+                case "floor":
+                    return Math::floor;
+                case "round":
+                    return v -> (double) Math.round(v);
+                case "sin":
+                    return Math::sin;
+                case "cos":
+                    return Math::cos;
+                case "tan":
+                    return Math::tan;
+                case "asin":
+                    return Math::asin;
+                case "acos":
+                    return Math::acos;
+                case "atan":
+                    return Math::atan;
+                case "sinh":
+                    return Math::sinh;
+                case "cosh":
+                    return Math::cosh;
+                case "tanh":
+                    return Math::tanh;
+                case "sqrt":
+                    return Math::sqrt;
+                case "exp":
+                    return Math::exp;
+                case "ln":
+                    return Math::log;
+                case "log":
+                    return Math::log10;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Lee los argumentos de una llamada, separados por comas y entre paréntesis.
+         *
+         * @param nombre Nombre de la función, para los mensajes de error.
+         * @return Los nodos de los argumentos, al menos uno.
+         */
+        List<Nodo> argumentos(String nombre) {
+            if (!consumir('(')) {
+                throw error("Falta '(' después de " + nombre);
+            }
+            List<Nodo> argumentos = new ArrayList<>();
+            do {
+                argumentos.add(expresion());
+            } while (consumir(','));
+            if (!consumir(')')) {
+                throw error("Falta ')'");
+            }
+            return argumentos;
+        }
+
+        /**
+         * Obtiene la operación que acumula los argumentos de una función de uno o más argumentos.
+         * Para {@code avg} se acumula la suma y luego se divide por la cantidad de argumentos.
+         *
+         * @param nombre Nombre de la función.
+         * @return La operación o null si no existe.
+         */
+        static DoubleBinaryOperator funcionVariadica(String nombre) {
+            switch (nombre) {
+                case "min":
+                    return Math::min;
+                case "max":
+                    return Math::max;
+                case "sum":
+                case "avg":
+                    return Double::sum;
+                default:
+                    return null;
+            }
+        }
+    }
+}
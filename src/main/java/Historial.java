@@ -0,0 +1,14 @@
+import java.io.Closeable;
+
+/**
+ * Representa un destino donde el servidor guarda los mensajes que difunde.
+ */
+public interface Historial extends Closeable {
+    /**
+     * Guarda un mensaje con el formato {@code Puerto,Expresion,Resultado,Fecha}.
+     *
+     * @param linea El mensaje a guardar.
+     * @return true si el mensaje se aceptó, false si se descartó.
+     */
+    boolean registrar(String linea);
+}
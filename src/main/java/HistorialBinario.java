@@ -0,0 +1,765 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Esta clase guarda el historial en formato binario, en archivos mapeados en memoria a los que solo se agregan datos.
+ *
+ * El historial se divide en segmentos. Cada segmento tiene un archivo de registros de tamaño fijo
+ * ({@code .reg}) y un archivo con el texto de las expresiones ({@code .exp}); cuando alguno se llena
+ * se empieza un segmento nuevo. Cada registro ocupa {@link #TAMANO_REGISTRO} bytes:
+ * <pre>
+ *  0  int    puerto
+ *  4  int    longitud de la expresión en bytes
+ *  8  long   fecha en milisegundos desde la época (nunca 0 en un registro escrito)
+ * 16  double resultado
+ * 24  long   posición de la expresión en el archivo .exp
+ * 32  int    tipo del resultado (ver {@link Registro#getTipo()})
+ * 36  int    reservado
+ * </pre>
+ * Las fechas son las del servidor al recibir el mensaje y nunca decrecen, así un índice disperso
+ * (una entrada cada {@link #INDICE_CADA} registros) basta para encontrar un rango de fechas sin
+ * recorrer todo el historial. El índice se reconstruye al abrir leyendo solo esas entradas.
+ * Un segmento puede quedar con registros libres si se llenó su archivo de expresiones, así que cada
+ * segmento guarda la posición global de su primer registro y las posiciones no tienen huecos.
+ *
+ * Solo el segmento en uso queda mapeado para escritura. Un hilo propio prepara de antemano el
+ * segmento siguiente y fuerza al disco el que se deja de usar, así quien registra no espera a que se
+ * creen ni se mapeen archivos. Los segmentos anteriores se mapean solo para leer cuando una consulta
+ * los necesita, y como mucho {@link #MAX_MAPEADOS} a la vez.
+ */
+public class HistorialBinario implements Historial {
+
+    /**
+     * Tamaño en bytes de cada registro.
+     */
+    static final int TAMANO_REGISTRO = 40;
+
+    /**
+     * Cada cuántos registros se agrega una entrada al índice de fechas.
+     */
+    static final int INDICE_CADA = 64;
+
+    /**
+     * Cantidad máxima de segmentos anteriores que quedan mapeados para lectura.
+     */
+    static final int MAX_MAPEADOS = 4;
+
+    /**
+     * Cantidad máxima de registros que una consulta copia por cada vez que toma el candado.
+     */
+    static final int BLOQUE_CONSULTA = 1024;
+
+    /** Resultado numérico escrito con {@code Float.toString}. */
+    static final int TIPO_FLOAT = 0;
+    /** Resultado numérico de doble precisión. */
+    static final int TIPO_DOUBLE = 1;
+    /** Resultado booleano, guardado como 1.0 o 0.0. */
+    static final int TIPO_BOOLEANO = 2;
+    /** Resultado que no es un número, guardado como NaN. */
+    static final int TIPO_OTRO = 3;
+
+    private static final Metricas.Histograma ESCRITURA = Metricas.histograma("historial.escritura");
+
+    private final Path directorio;
+    private final int registrosPorSegmento;
+    private final int bytesExpresiones;
+    private final List<Segmento> segmentos = new ArrayList<Segmento>();
+    private final ArrayDeque<Segmento> mapeados = new ArrayDeque<Segmento>();
+    private final ExecutorService preparador = Executors.newSingleThreadExecutor(r -> {
+        Thread hilo = new Thread(r, "historial-segmentos");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    private Future<Segmento> siguiente;
+    private long[] indiceFechas = new long[64];
+    private long[] indicePosiciones = new long[64];
+    private int entradasIndice;
+    private long ultimaFecha;
+
+    /**
+     * Clase interna que representa un segmento: un archivo de registros y uno de expresiones, mapeados en memoria.
+     */
+    private static final class Segmento {
+        private final Path registros;
+        private final Path expresiones;
+        private MappedByteBuffer mapaRegistros;
+        private MappedByteBuffer mapaExpresiones;
+        private long inicio;
+        private int cantidad;
+        private int finExpresiones;
+
+        /**
+         * Constructor de un segmento.
+         *
+         * @param registros   El archivo de registros.
+         * @param expresiones El archivo de expresiones.
+         */
+        Segmento(Path registros, Path expresiones) {
+            this.registros = registros;
+            this.expresiones = expresiones;
+        }
+    }
+
+    /**
+     * Clase interna que representa un registro leído del historial.
+     */
+    public static final class Registro {
+        private final int puerto;
+        private final long fechaMillis;
+        private final double resultado;
+        private final int tipo;
+        private final String expresion;
+
+        /**
+         * Constructor de un registro.
+         *
+         * @param puerto      El puerto del cliente.
+         * @param fechaMillis La fecha en milisegundos desde la época.
+         * @param resultado   El resultado.
+         * @param tipo        El tipo del resultado.
+         * @param expresion   La expresión.
+         */
+        Registro(int puerto, long fechaMillis, double resultado, int tipo, String expresion) {
+            this.puerto = puerto;
+            this.fechaMillis = fechaMillis;
+            this.resultado = resultado;
+            this.tipo = tipo;
+            this.expresion = expresion;
+        }
+
+        /**
+         * Obtiene el puerto del cliente que envió el mensaje.
+         *
+         * @return El puerto.
+         */
+        public int getPuerto() {
+            return puerto;
+        }
+
+        /**
+         * Obtiene la fecha en que el servidor recibió el mensaje.
+         *
+         * @return La fecha en milisegundos desde la época.
+         */
+        public long getFechaMillis() {
+            return fechaMillis;
+        }
+
+        /**
+         * Obtiene el resultado como número; los booleanos son 1.0 o 0.0 y los demás resultados NaN.
+         *
+         * @return El resultado.
+         */
+        public double getResultado() {
+            return resultado;
+        }
+
+        /**
+         * Obtiene el tipo del resultado: {@link #TIPO_FLOAT}, {@link #TIPO_DOUBLE}, {@link #TIPO_BOOLEANO} o {@link #TIPO_OTRO}.
+         *
+         * @return El tipo del resultado.
+         */
+        public int getTipo() {
+            return tipo;
+        }
+
+        /**
+         * Obtiene la expresión que envió el cliente.
+         *
+         * @return La expresión.
+         */
+        public String getExpresion() {
+            return expresion;
+        }
+
+        /**
+         * Obtiene el resultado escrito como lo envió el cliente.
+         *
+         * @return El resultado como texto.
+         */
+        public String getResultadoTexto() {
+            switch (tipo) {
+                case TIPO_FLOAT:
+                    return Float.toString((float) resultado);
+                case TIPO_BOOLEANO:
+                    return Boolean.toString(resultado != 0);
+                default:
+                    return Double.toString(resultado);
+            }
+        }
+
+        /**
+         * Escribe el registro como una línea del historial CSV.
+         *
+         * @param formato El formato de la fecha.
+         * @return La línea {@code Puerto,Expresion,Resultado,Fecha}.
+         */
+        String aCSV(SimpleDateFormat formato) {
+            return puerto + "," + expresion + "," + getResultadoTexto() + "," + formato.format(new Date(fechaMillis));
+        }
+    }
+
+    /**
+     * Abre (o crea) un historial binario con segmentos de 65536 registros y 4 MiB de expresiones.
+     *
+     * @param directorio El directorio de los segmentos.
+     * @throws IOException si no se puede abrir el directorio o algún segmento.
+     */
+    public HistorialBinario(Path directorio) throws IOException {
+        this(directorio, 1 << 16, 1 << 22);
+    }
+
+    /**
+     * Abre (o crea) un historial binario.
+     *
+     * @param directorio           El directorio de los segmentos.
+     * @param registrosPorSegmento La cantidad de registros de cada segmento.
+     * @param bytesExpresiones     El tamaño del archivo de expresiones de cada segmento.
+     * @throws IOException si no se puede abrir el directorio o algún segmento.
+     */
+    public HistorialBinario(Path directorio, int registrosPorSegmento, int bytesExpresiones) throws IOException {
+        this.directorio = directorio;
+        this.registrosPorSegmento = registrosPorSegmento;
+        this.bytesExpresiones = bytesExpresiones;
+        Files.createDirectories(directorio);
+        List<Path> existentes = new ArrayList<Path>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, "historial-*.reg")) {
+            for (Path archivo : archivos) {
+                existentes.add(archivo);
+            }
+        }
+        existentes.sort(null);
+        for (Path archivo : existentes) {
+            String nombre = archivo.getFileName().toString();
+            Segmento segmento = new Segmento(archivo, directorio.resolve(nombre.replace(".reg", ".exp")));
+            mapear(segmento, true);
+            cargar(segmento);
+            if (!segmentos.isEmpty()) {
+                liberar(segmentos.get(segmentos.size() - 1));
+            }
+            segmentos.add(segmento);
+        }
+        if (segmentos.isEmpty()) {
+            segmentos.add(preparar(0));
+        }
+        prepararSiguiente();
+    }
+
+    /**
+     * Pide al hilo preparador el segmento que sigue al actual.
+     */
+    private void prepararSiguiente() {
+        int numero = segmentos.size();
+        siguiente = preparador.submit(() -> preparar(numero));
+    }
+
+    /**
+     * Crea y mapea los archivos de un segmento. Se ejecuta en el hilo preparador.
+     *
+     * @param numero El número del segmento.
+     * @return El segmento mapeado para escritura.
+     * @throws IOException si no se pueden crear los archivos.
+     */
+    private Segmento preparar(int numero) throws IOException {
+        String nombre = String.format("historial-%08d", numero);
+        Segmento segmento = new Segmento(directorio.resolve(nombre + ".reg"), directorio.resolve(nombre + ".exp"));
+        mapear(segmento, true);
+        return segmento;
+    }
+
+    /**
+     * Pasa al segmento que preparó el hilo preparador, que normalmente ya está listo, y le pide el
+     * siguiente. El segmento anterior se fuerza al disco en ese hilo y deja de estar mapeado.
+     *
+     * @throws IOException si no se pudo preparar el segmento.
+     */
+    private void nuevoSegmento() throws IOException {
+        Segmento nuevo;
+        try {
+            nuevo = siguiente.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Preparación de segmento interrumpida", e);
+        } catch (ExecutionException e) {
+            // Se vuelve a intentar en la próxima escritura
+            prepararSiguiente();
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        Segmento anterior = segmentos.get(segmentos.size() - 1);
+        MappedByteBuffer registros = anterior.mapaRegistros;
+        MappedByteBuffer expresiones = anterior.mapaExpresiones;
+        preparador.execute(() -> {
+            registros.force();
+            expresiones.force();
+        });
+        liberar(anterior);
+        nuevo.inicio = anterior.inicio + anterior.cantidad;
+        segmentos.add(nuevo);
+        prepararSiguiente();
+    }
+
+    /**
+     * Mapea en memoria los dos archivos de un segmento con su tamaño completo.
+     *
+     * @param segmento  El segmento a mapear.
+     * @param escritura true para crear los archivos y mapearlos para escritura, false para solo lectura.
+     * @throws IOException si no se pueden abrir los archivos.
+     */
+    private void mapear(Segmento segmento, boolean escritura) throws IOException {
+        StandardOpenOption[] opciones = escritura
+                ? new StandardOpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[] {StandardOpenOption.READ};
+        FileChannel.MapMode modo = escritura ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        try (FileChannel registros = FileChannel.open(segmento.registros, opciones);
+             FileChannel expresiones = FileChannel.open(segmento.expresiones, opciones)) {
+            segmento.mapaRegistros = registros.map(modo, 0, (long) registrosPorSegmento * TAMANO_REGISTRO);
+            segmento.mapaExpresiones = expresiones.map(modo, 0, bytesExpresiones);
+        }
+    }
+
+    /**
+     * Suelta los mapas de un segmento; la memoria se libera cuando el recolector de basura los descarta.
+     *
+     * @param segmento El segmento.
+     */
+    private static void liberar(Segmento segmento) {
+        segmento.mapaRegistros = null;
+        segmento.mapaExpresiones = null;
+    }
+
+    /**
+     * Obtiene un segmento mapeado. Los segmentos anteriores al actual se mapean para lectura cuando
+     * se necesitan y se sueltan los más viejos si hay más de {@link #MAX_MAPEADOS}.
+     *
+     * @param numero El número del segmento.
+     * @return El segmento, con sus mapas disponibles.
+     * @throws UncheckedIOException si no se puede abrir el segmento.
+     */
+    private Segmento mapeado(int numero) {
+        Segmento segmento = segmentos.get(numero);
+        if (segmento.mapaRegistros == null) {
+            try {
+                mapear(segmento, false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            mapeados.addLast(segmento);
+            if (mapeados.size() > MAX_MAPEADOS) {
+                liberar(mapeados.pollFirst());
+            }
+        }
+        return segmento;
+    }
+
+    /**
+     * Calcula cuántos registros tiene un segmento existente (los registros escritos son contiguos
+     * y tienen fecha distinta de cero) y agrega sus entradas al índice.
+     *
+     * @param segmento El segmento a cargar.
+     */
+    private void cargar(Segmento segmento) {
+        int bajo = 0;
+        int alto = registrosPorSegmento;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (segmento.mapaRegistros.getLong(medio * TAMANO_REGISTRO + 8) != 0) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        segmento.cantidad = bajo;
+        segmento.inicio = getTotal();
+        if (bajo > 0) {
+            int ultimo = (bajo - 1) * TAMANO_REGISTRO;
+            segmento.finExpresiones = (int) (segmento.mapaRegistros.getLong(ultimo + 24) + segmento.mapaRegistros.getInt(ultimo + 4));
+            ultimaFecha = Math.max(ultimaFecha, segmento.mapaRegistros.getLong(ultimo + 8));
+        }
+        for (int i = 0; i < bajo; i += INDICE_CADA) {
+            indexar(segmento.mapaRegistros.getLong(i * TAMANO_REGISTRO + 8), segmento.inicio + i);
+        }
+    }
+
+    /**
+     * Agrega una entrada al índice de fechas.
+     *
+     * @param fecha    La fecha del registro.
+     * @param posicion La posición global del registro.
+     */
+    private void indexar(long fecha, long posicion) {
+        if (entradasIndice == indiceFechas.length) {
+            indiceFechas = Arrays.copyOf(indiceFechas, entradasIndice * 2);
+            indicePosiciones = Arrays.copyOf(indicePosiciones, entradasIndice * 2);
+        }
+        indiceFechas[entradasIndice] = fecha;
+        indicePosiciones[entradasIndice] = posicion;
+        entradasIndice++;
+    }
+
+    /**
+     * Guarda un mensaje con el formato {@code Puerto,Expresion,Resultado,Fecha}. La fecha del
+     * registro es la del servidor al recibirlo.
+     *
+     * @param linea El mensaje a guardar.
+     * @return true si se guardó, false si el mensaje no tiene el formato esperado.
+     */
+    @Override
+    public boolean registrar(String linea) {
+        int primera = linea.indexOf(',');
+        int ultima = linea.lastIndexOf(',');
+        int penultima = ultima > 0 ? linea.lastIndexOf(',', ultima - 1) : -1;
+        if (primera < 0 || penultima <= primera) {
+            return false;
+        }
+        int puerto;
+        try {
+            puerto = Integer.parseInt(linea.substring(0, primera).trim());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        String resultado = linea.substring(penultima + 1, ultima).trim();
+        long inicio = System.nanoTime();
+        try {
+            agregar(puerto, System.currentTimeMillis(), resultado, linea.substring(primera + 1, penultima));
+            ESCRITURA.registrarDesde(inicio);
+        } catch (IOException e) {
+            System.out.println(e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Agrega un registro al final del historial, empezando un segmento nuevo si el actual está lleno.
+     *
+     * @param puerto      El puerto del cliente.
+     * @param fechaMillis La fecha; si es anterior a la del último registro se usa esa.
+     * @param resultado   El resultado como texto.
+     * @param expresion   La expresión.
+     * @throws IOException si no se puede crear un segmento nuevo.
+     * @throws IllegalArgumentException si la expresión no cabe en un segmento.
+     */
+    public synchronized void agregar(int puerto, long fechaMillis, String resultado, String expresion) throws IOException {
+        byte[] bytes = expresion.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > bytesExpresiones) {
+            throw new IllegalArgumentException("La expresión no cabe en un segmento: " + bytes.length + " bytes");
+        }
+        Segmento segmento = segmentos.get(segmentos.size() - 1);
+        if (segmento.cantidad == registrosPorSegmento || segmento.finExpresiones + bytes.length > bytesExpresiones) {
+            nuevoSegmento();
+            segmento = segmentos.get(segmentos.size() - 1);
+        }
+        int tipo = tipo(resultado);
+        double valor;
+        switch (tipo) {
+            case TIPO_BOOLEANO:
+                valor = Boolean.parseBoolean(resultado) ? 1.0 : 0.0;
+                break;
+            case TIPO_OTRO:
+                valor = Double.NaN;
+                break;
+            default:
+                valor = Double.parseDouble(resultado);
+        }
+        long fecha = Math.max(Math.max(fechaMillis, 1), ultimaFecha);
+        ultimaFecha = fecha;
+
+        segmento.mapaExpresiones.put(segmento.finExpresiones, bytes);
+        int posicion = segmento.cantidad * TAMANO_REGISTRO;
+        MappedByteBuffer mapa = segmento.mapaRegistros;
+        mapa.putInt(posicion, puerto);
+        mapa.putInt(posicion + 4, bytes.length);
+        mapa.putDouble(posicion + 16, valor);
+        mapa.putLong(posicion + 24, segmento.finExpresiones);
+        mapa.putInt(posicion + 32, tipo);
+        // La fecha se escribe al final: un registro con fecha distinta de cero está completo
+        mapa.putLong(posicion + 8, fecha);
+
+        if (segmento.cantidad % INDICE_CADA == 0) {
+            indexar(fecha, segmento.inicio + segmento.cantidad);
+        }
+        segmento.cantidad++;
+        segmento.finExpresiones += bytes.length;
+    }
+
+    /**
+     * Determina el tipo de un resultado enviado como texto.
+     *
+     * @param resultado El resultado.
+     * @return El tipo del resultado.
+     */
+    private static int tipo(String resultado) {
+        if (resultado.equalsIgnoreCase("true") || resultado.equalsIgnoreCase("false")) {
+            return TIPO_BOOLEANO;
+        }
+        try {
+            float comoFloat = Float.parseFloat(resultado);
+            if (Float.toString(comoFloat).equals(resultado)) {
+                return TIPO_FLOAT;
+            }
+            Double.parseDouble(resultado);
+            return TIPO_DOUBLE;
+        } catch (NumberFormatException e) {
+            return TIPO_OTRO;
+        }
+    }
+
+    /**
+     * Obtiene la cantidad total de registros.
+     *
+     * @return La cantidad de registros.
+     */
+    public synchronized long getCantidad() {
+        return getTotal();
+    }
+
+    /**
+     * Calcula la cantidad de registros de los segmentos ya agregados. Se llama con el candado tomado.
+     *
+     * @return La posición que tendrá el próximo registro.
+     */
+    private long getTotal() {
+        if (segmentos.isEmpty()) {
+            return 0;
+        }
+        Segmento ultimo = segmentos.get(segmentos.size() - 1);
+        return ultimo.inicio + ultimo.cantidad;
+    }
+
+    /**
+     * Recorre en orden los registros con fecha entre {@code desde} y {@code hasta}, ambos incluidos.
+     * El índice disperso ubica el primer registro candidato, así no se recorre el historial desde el principio.
+     * Los registros se copian por bloques con el candado tomado y la acción se ejecuta sin él, así una
+     * acción lenta, como escribir a disco, no detiene a quien registra.
+     *
+     * @param desde   La fecha mínima en milisegundos desde la época.
+     * @param hasta   La fecha máxima en milisegundos desde la época.
+     * @param visitor La acción para cada registro.
+     * @throws UncheckedIOException si no se puede abrir un segmento anterior.
+     */
+    public void consultar(long desde, long hasta, Consumer<Registro> visitor) {
+        List<Registro> bloque = new ArrayList<Registro>();
+        long posicion = primeraPosicion(desde);
+        while (posicion >= 0) {
+            posicion = copiar(posicion, desde, hasta, bloque);
+            for (Registro registro : bloque) {
+                visitor.accept(registro);
+            }
+            bloque.clear();
+        }
+    }
+
+    /**
+     * Busca en el índice la posición desde la que puede haber registros con fecha {@code desde}.
+     *
+     * @param desde La fecha mínima en milisegundos desde la época.
+     * @return La posición del primer registro candidato.
+     */
+    private synchronized long primeraPosicion(long desde) {
+        // Última entrada del índice con fecha menor que desde
+        int bajo = 0;
+        int alto = entradasIndice;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (indiceFechas[medio] < desde) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo == 0 ? 0 : indicePosiciones[bajo - 1];
+    }
+
+    /**
+     * Copia hasta {@link #BLOQUE_CONSULTA} registros del rango de fechas a partir de una posición.
+     * Los espacios con fecha 0 no son registros escritos y no se copian.
+     *
+     * @param posicion La posición desde la que se copia.
+     * @param desde    La fecha mínima en milisegundos desde la época.
+     * @param hasta    La fecha máxima en milisegundos desde la época.
+     * @param bloque   El destino de los registros.
+     * @return La posición donde sigue la consulta, o -1 si ya terminó.
+     */
+    private synchronized long copiar(long posicion, long desde, long hasta, List<Registro> bloque) {
+        long total = getTotal();
+        for (; posicion < total; posicion++) {
+            if (bloque.size() == BLOQUE_CONSULTA) {
+                return posicion;
+            }
+            Segmento segmento = mapeado(numeroSegmento(posicion));
+            int base = (int) (posicion - segmento.inicio) * TAMANO_REGISTRO;
+            long fecha = segmento.mapaRegistros.getLong(base + 8);
+            if (fecha > hasta) {
+                return -1;
+            }
+            if (fecha != 0 && fecha >= desde) {
+                bloque.add(leer(segmento, base, fecha));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Busca el segmento que contiene una posición: el último cuyo primer registro no la supera.
+     *
+     * @param posicion La posición global del registro.
+     * @return El número del segmento.
+     */
+    private int numeroSegmento(long posicion) {
+        int bajo = 0;
+        int alto = segmentos.size() - 1;
+        while (bajo < alto) {
+            int medio = (bajo + alto + 1) >>> 1;
+            if (segmentos.get(medio).inicio <= posicion) {
+                bajo = medio;
+            } else {
+                alto = medio - 1;
+            }
+        }
+        return bajo;
+    }
+
+    /**
+     * Obtiene los registros con fecha entre {@code desde} y {@code hasta}, ambos incluidos.
+     *
+     * @param desde La fecha mínima en milisegundos desde la época.
+     * @param hasta La fecha máxima en milisegundos desde la época.
+     * @return Los registros en orden de fecha.
+     */
+    public List<Registro> consultar(long desde, long hasta) {
+        List<Registro> registros = new ArrayList<Registro>();
+        consultar(desde, hasta, registros::add);
+        return registros;
+    }
+
+    /**
+     * Lee un registro de un segmento.
+     *
+     * @param segmento El segmento.
+     * @param base     La posición en bytes del registro dentro del archivo de registros.
+     * @param fecha    La fecha ya leída del registro.
+     * @return El registro.
+     */
+    private static Registro leer(Segmento segmento, int base, long fecha) {
+        MappedByteBuffer mapa = segmento.mapaRegistros;
+        int longitud = mapa.getInt(base + 4);
+        int inicio = (int) mapa.getLong(base + 24);
+        byte[] bytes = new byte[longitud];
+        segmento.mapaExpresiones.get(inicio, bytes);
+        return new Registro(mapa.getInt(base), fecha, mapa.getDouble(base + 16), mapa.getInt(base + 32),
+                new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Exporta todo el historial en el formato CSV de "historial.csv".
+     *
+     * @param salida El destino del CSV.
+     * @throws IOException si ocurre un error de escritura.
+     */
+    public void exportarCSV(Writer salida) throws IOException {
+        SimpleDateFormat formato = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
+        BufferedWriter bw = new BufferedWriter(salida);
+        bw.write(EscritorHistorial.ENCABEZADO);
+        bw.newLine();
+        IOException[] error = new IOException[1];
+        consultar(Long.MIN_VALUE, Long.MAX_VALUE, registro -> {
+            if (error[0] == null) {
+                try {
+                    bw.write(registro.aCSV(formato));
+                    bw.newLine();
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            }
+        });
+        bw.flush();
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    /**
+     * Espera al hilo preparador, fuerza los datos al disco y borra el segmento preparado que no se
+     * llegó a usar. Los mapas se liberan cuando el recolector de basura los descarta.
+     *
+     * @throws IOException si no se puede borrar el segmento sin usar.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        preparador.shutdown();
+        try {
+            Segmento sinUsar = siguiente.get();
+            liberar(sinUsar);
+            Files.deleteIfExists(sinUsar.registros);
+            Files.deleteIfExists(sinUsar.expresiones);
+            preparador.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // No se creó el segmento: no hay nada que borrar
+        }
+        Segmento actual = segmentos.get(segmentos.size() - 1);
+        actual.mapaRegistros.force();
+        actual.mapaExpresiones.force();
+    }
+
+    /**
+     * Indica si la propiedad del sistema "historial.formato" pide el historial binario.
+     *
+     * @return true si "historial.formato" es "binario".
+     */
+    static boolean configurado() {
+        return "binario".equalsIgnoreCase(System.getProperty("historial.formato", "csv"));
+    }
+
+    /**
+     * Abre el historial binario en el directorio de la propiedad del sistema "historial.directorio"
+     * (por defecto "historial").
+     *
+     * @return El historial binario.
+     * @throws IOException si no se puede abrir el directorio o algún segmento.
+     */
+    static HistorialBinario desdePropiedades() throws IOException {
+        return new HistorialBinario(Paths.get(System.getProperty("historial.directorio", "historial")));
+    }
+
+    /**
+     * Exporta un historial binario a CSV.
+     *
+     * @param args El directorio del historial y el archivo CSV de salida.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Uso: HistorialBinario <directorio> <salida.csv>");
+            return;
+        }
+        try (HistorialBinario historial = new HistorialBinario(Paths.get(args[0]));
+             Writer salida = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            historial.exportarCSV(salida);
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+import java.util.PriorityQueue;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Contiene los métodos numéricos para aproximar integrales definidas de funciones de una variable.
+ */
+public final class Integrador {
+    /**
+     * Cantidad de bloques en que se divide la partición en el modo paralelo. Es fija, y no depende
+     * de la cantidad de núcleos, para que el resultado sea siempre el mismo.
+     */
+    static final int BLOQUES_PARALELOS = 256;
+
+    /**
+     * Cantidad máxima de subintervalos por defecto del método adaptativo.
+     */
+    static final int MAX_SUBINTERVALOS = 10000;
+
+    /**
+     * Nodos de Kronrod de 15 puntos en [0, 1]; los de índice impar son también los nodos de Gauss de 7 puntos.
+     */
+    private static final double[] NODOS_KRONROD = {
+            0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+            0.864864423359769072789712788640926, 0.741531185599394439863864773280788,
+            0.586087235467691130294144845693013, 0.405845151377397166906606412076961,
+            0.207784955007898467600689403773245, 0.000000000000000000000000000000000
+    };
+
+    /**
+     * Pesos de Kronrod de 15 puntos, en el mismo orden que {@link #NODOS_KRONROD}.
+     */
+    private static final double[] PESOS_KRONROD = {
+            0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+            0.104790010322250183839876322541518, 0.140653259715525918745189590510238,
+            0.169004726639267902826583426598550, 0.190350578064785409913256402421014,
+            0.204432940075298892414161999234649, 0.209482141084727828012999174891714
+    };
+
+    /**
+     * Pesos de Gauss de 7 puntos para los nodos de índice impar de {@link #NODOS_KRONROD}.
+     */
+    private static final double[] PESOS_GAUSS = {
+            0.129484966168869693270611432679082, 0.279705391489276667901467771423780,
+            0.381830050505118944950369775488975, 0.417959183673469387755102040816327
+    };
+
+    private Integrador() {
+    }
+
+    /**
+     * Resultado de una integración adaptativa.
+     */
+    public static final class ResultadoIntegral {
+        private final double valor;
+        private final double errorEstimado;
+        private final int evaluaciones;
+        private final boolean convergio;
+
+        /**
+         * Constructor de un resultado.
+         *
+         * @param valor Aproximación de la integral.
+         * @param errorEstimado Estimación del error absoluto.
+         * @param evaluaciones Cantidad de evaluaciones de la función.
+         * @param convergio true si se alcanzó la tolerancia pedida.
+         */
+        ResultadoIntegral(double valor, double errorEstimado, int evaluaciones, boolean convergio) {
+            this.valor = valor;
+            this.errorEstimado = errorEstimado;
+            this.evaluaciones = evaluaciones;
+            this.convergio = convergio;
+        }
+
+        /**
+         * Obtiene la aproximación de la integral.
+         *
+         * @return Valor de la integral.
+         */
+        public double getValor() {
+            return valor;
+        }
+
+        /**
+         * Obtiene la estimación del error absoluto.
+         *
+         * @return Error estimado.
+         */
+        public double getErrorEstimado() {
+            return errorEstimado;
+        }
+
+        /**
+         * Obtiene la cantidad de veces que se evaluó la función.
+         *
+         * @return Cantidad de evaluaciones.
+         */
+        public int getEvaluaciones() {
+            return evaluaciones;
+        }
+
+        /**
+         * Indica si se alcanzó la tolerancia antes del límite de subintervalos.
+         *
+         * @return true si el resultado cumple la tolerancia pedida.
+         */
+        public boolean convergio() {
+            return convergio;
+        }
+
+        @Override
+        public String toString() {
+            return valor + " (error ~" + errorEstimado + ", " + evaluaciones + " evaluaciones)";
+        }
+    }
+
+    /**
+     * Subintervalo del método adaptativo junto con su aproximación y su error estimado.
+     */
+    private static final class Subintervalo implements Comparable<Subintervalo> {
+        final double inicio;
+        final double fin;
+        final double valor;
+        final double error;
+
+        /**
+         * Integra la función en el subintervalo con la regla de Gauss-Kronrod de 15 puntos.
+         *
+         * @param funcion Función a integrar.
+         * @param inicio Inicio del subintervalo.
+         * @param fin Fin del subintervalo.
+         */
+        Subintervalo(DoubleUnaryOperator funcion, double inicio, double fin) {
+            double centro = (inicio + fin) / 2;
+            double radio = (fin - inicio) / 2;
+            double fCentro = funcion.applyAsDouble(centro);
+            double kronrod = fCentro * PESOS_KRONROD[7];
+            double gauss = fCentro * PESOS_GAUSS[3];
+            for (int i = 0; i < 7; i++) {
+                double desplazamiento = radio * NODOS_KRONROD[i];
+                double suma = funcion.applyAsDouble(centro - desplazamiento) + funcion.applyAsDouble(centro + desplazamiento);
+                kronrod += PESOS_KRONROD[i] * suma;
+                if (i % 2 == 1) {
+                    gauss += PESOS_GAUSS[i / 2] * suma;
+                }
+            }
+            this.inicio = inicio;
+            this.fin = fin;
+            this.valor = kronrod * radio;
+            this.error = Math.abs((kronrod - gauss) * radio);
+        }
+
+        @Override
+        public int compareTo(Subintervalo otro) {
+            return Double.compare(otro.error, error);
+        }
+    }
+
+    /**
+     * Aproxima la integral definida con la regla del trapecio compuesta.
+     * Cada punto interior de la partición se evalúa una sola vez.
+     *
+     * @param funcion Función a integrar.
+     * @param limiteInferior Límite inferior de integración.
+     * @param limiteSuperior Límite superior de integración.
+     * @param numIntervalos Cantidad de intervalos de la partición.
+     * @return Aproximación de la integral.
+     */
+    public static double trapecio(DoubleUnaryOperator funcion, double limiteInferior, double limiteSuperior, int numIntervalos) {
+        double anchoIntervalo = (limiteSuperior - limiteInferior) / numIntervalos;
+        double suma = (funcion.applyAsDouble(limiteInferior) + funcion.applyAsDouble(limiteSuperior)) / 2;
+        for (int i = 1; i < numIntervalos; i++) {
+            suma += funcion.applyAsDouble(limiteInferior + i * anchoIntervalo);
+        }
+        return suma * anchoIntervalo;
+    }
+
+    /**
+     * Aproxima la integral definida con la regla del trapecio compuesta usando todos los núcleos.
+     * La partición se divide en {@link #BLOQUES_PARALELOS} bloques que se evalúan en el
+     * {@code ForkJoinPool} común; cada bloque y la combinación final usan suma compensada de Kahan,
+     * y los bloques se combinan siempre en el mismo orden, así el resultado es determinista.
+     * La función debe poder evaluarse desde varios hilos a la vez.
+     *
+     * @param funcion Función a integrar.
+     * @param limiteInferior Límite inferior de integración.
+     * @param limiteSuperior Límite superior de integración.
+     * @param numIntervalos Cantidad de intervalos de la partición.
+     * @return Aproximación de la integral.
+     */
+    public static double trapecioParalelo(DoubleUnaryOperator funcion, double limiteInferior, double limiteSuperior, int numIntervalos) {
+        double anchoIntervalo = (limiteSuperior - limiteInferior) / numIntervalos;
+        int bloques = Math.min(BLOQUES_PARALELOS, numIntervalos);
+        double[] parciales = IntStream.range(0, bloques).parallel().mapToDouble(bloque -> {
+            // Puntos interiores 1..numIntervalos-1 repartidos en bloques contiguos
+            int desde = 1 + (int) ((long) (numIntervalos - 1) * bloque / bloques);
+            int hasta = 1 + (int) ((long) (numIntervalos - 1) * (bloque + 1) / bloques);
+            double suma = 0.0;
+            double compensacion = 0.0;
+            for (int i = desde; i < hasta; i++) {
+                double y = funcion.applyAsDouble(limiteInferior + i * anchoIntervalo) - compensacion;
+                double t = suma + y;
+                compensacion = (t - suma) - y;
+                suma = t;
+            }
+            return suma;
+        }).toArray();
+
+        double suma = (funcion.applyAsDouble(limiteInferior) + funcion.applyAsDouble(limiteSuperior)) / 2;
+        double compensacion = 0.0;
+        for (double parcial : parciales) {
+            double y = parcial - compensacion;
+            double t = suma + y;
+            compensacion = (t - suma) - y;
+            suma = t;
+        }
+        return suma * anchoIntervalo;
+    }
+
+    /**
+     * Aproxima la integral definida con cuadratura adaptativa de Gauss-Kronrod (7-15 puntos).
+     * Se divide siempre el subintervalo con mayor error estimado, así los puntos se concentran donde
+     * la función lo necesita. Se detiene cuando el error total estimado es menor que
+     * {@code max(toleranciaAbsoluta, toleranciaRelativa * |integral|)} o al llegar a {@code maxSubintervalos}.
+     *
+     * @param funcion Función a integrar.
+     * @param limiteInferior Límite inferior de integración.
+     * @param limiteSuperior Límite superior de integración.
+     * @param toleranciaAbsoluta Error absoluto aceptado.
+     * @param toleranciaRelativa Error relativo aceptado.
+     * @param maxSubintervalos Cantidad máxima de subintervalos.
+     * @return El resultado, con el error estimado y la cantidad de evaluaciones usadas.
+     */
+    public static ResultadoIntegral adaptativo(DoubleUnaryOperator funcion, double limiteInferior, double limiteSuperior,
+                                               double toleranciaAbsoluta, double toleranciaRelativa, int maxSubintervalos) {
+        PriorityQueue<Subintervalo> pendientes = new PriorityQueue<>();
+        Subintervalo inicial = new Subintervalo(funcion, limiteInferior, limiteSuperior);
+        pendientes.add(inicial);
+        double valor = inicial.valor;
+        double error = inicial.error;
+        int evaluaciones = 15;
+        while (error > Math.max(toleranciaAbsoluta, toleranciaRelativa * Math.abs(valor))
+                && pendientes.size() < maxSubintervalos) {
+            Subintervalo peor = pendientes.poll();
+            double medio = (peor.inicio + peor.fin) / 2;
+            Subintervalo izquierda = new Subintervalo(funcion, peor.inicio, medio);
+            Subintervalo derecha = new Subintervalo(funcion, medio, peor.fin);
+            evaluaciones += 30;
+            valor += izquierda.valor + derecha.valor - peor.valor;
+            error += izquierda.error + derecha.error - peor.error;
+            pendientes.add(izquierda);
+            pendientes.add(derecha);
+        }
+        // Se vuelve a sumar desde cero para no arrastrar el error de redondeo de las restas
+        valor = 0.0;
+        error = 0.0;
+        for (Subintervalo subintervalo : pendientes) {
+            valor += subintervalo.valor;
+            error += subintervalo.error;
+        }
+        boolean convergio = Double.isFinite(valor) && error <= Math.max(toleranciaAbsoluta, toleranciaRelativa * Math.abs(valor));
+        return new ResultadoIntegral(valor, error, evaluaciones, convergio);
+    }
+}
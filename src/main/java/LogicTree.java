@@ -55,6 +55,17 @@ public class LogicTree {
             return right;
         }
     }
+    /**
+     * Cantidad máxima de expresiones compiladas que se guardan en la caché.
+     */
+    private static final int CACHE_CAPACITY = 256;
+
+    /**
+     * Caché acotada de expresiones compiladas, indexada por la expresión infix.
+     */
+    private static final CompilationCache<CompiledLogicExpression> cache =
+            new CompilationCache<CompiledLogicExpression>(CACHE_CAPACITY);
+
     /**
      * Verifica si una cadena es un operador lógico válido.
      *
@@ -90,16 +101,19 @@ public class LogicTree {
      */
     public static String infixToPostfix(String infix) {
         StringBuilder postfix = new StringBuilder();
-        Stacks.Stack_LinkedList stack = new Stacks().new Stack_LinkedList();
+        Stacks.ArrayStack<String> stack = new Stacks.ArrayStack<>();
 
         for (String token : infix.split("\\s+")) {
 //            System.out.println(token.charAt(0));
             if (Character.isLetter(token.charAt(0))) {
                 postfix.append(token);
                 postfix.append(' ');
+            } else if (token.equals("~")) {
+                // La negación es unaria y prefija: se aplica a lo que sigue, no saca operadores de la pila
+                stack.push(token);
             } else if (isOperator(token)) {
-                while (!stack.isEmpty() && isOperator((String) stack.peek())) {
-                    String topOperator = (String) stack.peek();
+                while (!stack.isEmpty() && isOperator(stack.peek())) {
+                    String topOperator = stack.peek();
                     if (precedence(topOperator) >= precedence(token)) {
                         postfix.append(stack.pop());
                         postfix.append(' ');
@@ -131,55 +145,109 @@ public class LogicTree {
      * @return El nodo raíz del árbol de expresiones lógicas.
      */
     public static TreeNode postfixToTree(String postfix){
-        Stacks.Stack_LinkedList stack = new Stacks().new Stack_LinkedList();
+        Stacks.ArrayStack<TreeNode> stack = new Stacks.ArrayStack<>();
         for (String token : postfix.split("\\s+")){
             if (Character.isLetter(token.charAt(0))){
                 stack.push(new TreeNode(token));
+            } else if (token.equals("~")){
+                stack.push(new TreeNode(token, null, stack.pop()));
             } else if (isOperator(token)){
-                TreeNode right = (TreeNode) stack.pop();
-                TreeNode left = (TreeNode) stack.pop();
+                TreeNode right = stack.pop();
+                TreeNode left = stack.pop();
                 stack.push(new TreeNode(token, left, right));
             }
         }
-        return (TreeNode) stack.pop();
+        return stack.pop();
     }
     /**
      * Evalúa el resultado de un árbol de expresiones lógicas.
      *
+     * El árbol se recorre en postorden con pilas explícitas en lugar de recursión, así una expresión
+     * con cientos de miles de operadores anidados no desborda la pila de la JVM; la memoria usada es
+     * proporcional a la altura del árbol. {@code |} y {@code &} no evalúan el hijo derecho si el
+     * izquierdo ya decide el resultado.
+     *
      * @param tree El árbol de expresiones a evaluar.
      * @return El resultado de la evaluación de la expresión lógica.
      */
     public static boolean evaluate(TreeNode tree){
-//        System.out.println(tree.data);
-        if (tree == null){
-            return false;
-        } else if (tree.getLeft() == null && tree.getRight() == null){
-            return Boolean.parseBoolean(tree.getElement());
-        } else {
-            boolean left = evaluate(tree.getLeft());
-            boolean right = evaluate(tree.getRight());
-
-            String operator = tree.getElement();
+        Stacks.ArrayStack<TreeNode> nodes = new Stacks.ArrayStack<>();
+        Stacks.IntStack states = new Stacks.IntStack();
+        Stacks.ArrayStack<Boolean> values = new Stacks.ArrayStack<>();
+        nodes.push(tree);
+        states.push(0);
+        while (!nodes.isEmpty()) {
+            TreeNode node = nodes.peek();
+            int state = states.pop();
+            if (node == null) {
+                nodes.pop();
+                values.push(false);
+                continue;
+            }
+            if (node.getLeft() == null && node.getRight() == null) {
+                nodes.pop();
+                values.push(Boolean.parseBoolean(node.getElement()));
+                continue;
+            }
+            // Estado 0: falta el hijo izquierdo; estado 1: falta el derecho; estado 2: se aplica el operador
+            String operator = node.getElement();
             switch (operator){
                 case "|":
-                    return left | right;
                 case "&":
-                    return left & right;
+                    if (state == 1 && values.peek() == operator.equals("|")) {
+                        // El hijo izquierdo decide el resultado, que queda en la pila
+                        nodes.pop();
+                        continue;
+                    }
+                    if (state == 1) {
+                        values.pop();
+                    }
+                    break;
                 case "^":
-                    return left ^ right;
+                    if (state == 2) {
+                        boolean right = values.pop();
+                        values.push(values.pop() ^ right);
+                    }
+                    break;
                 case "~":
-                    try {
-                        return !right;
-
-                    } catch (Exception e) {
-                        System.out.println(e);
+                    if (state == 0) {
+                        state = 1;
+                    } else {
+                        values.push(!values.pop());
                     }
-
-
+                    break;
                 default:
-                    return true;
+                    nodes.pop();
+                    values.push(true);
+                    continue;
+            }
+            if (state < 2) {
+                states.push(state + 1);
+                nodes.push(state == 0 ? node.getLeft() : node.getRight());
+                states.push(0);
+            } else {
+                nodes.pop();
             }
         }
+        return values.pop();
+    }
+
+    /**
+     * Compila una expresión lógica para evaluarla muchas veces sin repetir la conversión a postfix,
+     * la construcción del árbol ni la optimización. Las compilaciones se guardan en una caché acotada
+     * que se lee sin candados.
+     *
+     * @param exp La expresión lógica a compilar.
+     * @return La expresión compilada.
+     */
+    public static CompiledLogicExpression compile(String exp) {
+        CompiledLogicExpression compiled = cache.get(exp);
+        if (compiled != null) {
+            return compiled;
+        }
+        compiled = CompiledLogicExpression.compile(postfixToTree(infixToPostfix(exp)));
+        cache.put(exp, compiled);
+        return compiled;
     }
     /**
      * Calcula y devuelve el resultado de una expresión lógica dada.
@@ -188,14 +256,7 @@ public class LogicTree {
      * @return El resultado de la expresión lógica.
      */
     public boolean result(String exp){
-        String infix = exp;
-        System.out.println("Infix: " + infix);
-        String postfix = infixToPostfix(infix);
-        System.out.println("Postfix: " + postfix);
-        TreeNode tree = postfixToTree(postfix);
-        System.out.println("Result: " + evaluate(tree));
-        return evaluate(tree);
-
+        return compile(exp).evaluate();
     }
 
     /**
@@ -0,0 +1,380 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Esta clase es el registro de métricas del servidor y de los evaluadores.
+ *
+ * Hay dos tipos de métricas: contadores ({@link Contador}), que se incrementan sin bloqueos, e
+ * histogramas de latencia ({@link Histograma}) con cubetas logarítmicas al estilo HDR, que permiten
+ * obtener percentiles como el p99 con un error relativo menor al 7 % sin guardar cada muestra.
+ * Las métricas se crean la primera vez que se piden por nombre y se pueden consultar por JMX
+ * (bajo el nombre {@code Calculadora:type=Metricas}) o con un volcado de texto periódico.
+ */
+public final class Metricas {
+
+    /**
+     * Nombre JMX con el que se registran las métricas.
+     */
+    static final String NOMBRE_JMX = "Calculadora:type=Metricas";
+
+    private static final Map<String, Contador> contadores = new ConcurrentHashMap<String, Contador>();
+    private static final Map<String, Histograma> histogramas = new ConcurrentHashMap<String, Histograma>();
+    private static ScheduledExecutorService volcado;
+
+    private Metricas() {
+    }
+
+    /**
+     * Clase interna que representa un contador que se incrementa desde varios hilos sin bloqueos.
+     */
+    public static final class Contador {
+        private final LongAdder valor = new LongAdder();
+
+        /**
+         * Suma uno al contador.
+         */
+        public void incrementar() {
+            valor.increment();
+        }
+
+        /**
+         * Suma una cantidad al contador.
+         *
+         * @param cantidad La cantidad a sumar.
+         */
+        public void sumar(long cantidad) {
+            valor.add(cantidad);
+        }
+
+        /**
+         * Obtiene el valor actual del contador.
+         *
+         * @return El valor del contador.
+         */
+        public long getValor() {
+            return valor.sum();
+        }
+    }
+
+    /**
+     * Clase interna que representa un histograma de latencias en nanosegundos.
+     *
+     * Los valores menores que 16 tienen una cubeta cada uno; a partir de ahí cada potencia de dos se
+     * divide en 16 cubetas iguales, así cada cubeta cubre a lo sumo 1/16 de su valor. Registrar un
+     * valor es un incremento atómico en un arreglo, sin bloqueos ni memoria nueva.
+     */
+    public static final class Histograma {
+        private static final int BITS_SUBCUBETA = 4;
+        private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;
+        private static final int CUBETAS = (64 - BITS_SUBCUBETA + 1) * SUBCUBETAS;
+
+        private final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+        private final LongAdder cantidad = new LongAdder();
+        private final LongAdder suma = new LongAdder();
+        private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Registra un valor.
+         *
+         * @param nanos La latencia en nanosegundos; los valores negativos se toman como 0.
+         */
+        public void registrar(long nanos) {
+            long valor = Math.max(nanos, 0);
+            cubetas.incrementAndGet(cubeta(valor));
+            cantidad.increment();
+            suma.add(valor);
+            maximo.accumulate(valor);
+        }
+
+        /**
+         * Registra el tiempo pasado desde un instante.
+         *
+         * @param inicioNanos El instante inicial, obtenido con {@link System#nanoTime()}.
+         */
+        public void registrarDesde(long inicioNanos) {
+            registrar(System.nanoTime() - inicioNanos);
+        }
+
+        /**
+         * Obtiene la cubeta de un valor.
+         *
+         * @param valor El valor, no negativo.
+         * @return El índice de la cubeta.
+         */
+        static int cubeta(long valor) {
+            if (valor < SUBCUBETAS) {
+                return (int) valor;
+            }
+            int exponente = 63 - Long.numberOfLeadingZeros(valor);
+            int subcubeta = (int) (valor >>> (exponente - BITS_SUBCUBETA)) & (SUBCUBETAS - 1);
+            return (exponente - BITS_SUBCUBETA + 1) * SUBCUBETAS + subcubeta;
+        }
+
+        /**
+         * Obtiene el mayor valor que cae en una cubeta.
+         *
+         * @param cubeta El índice de la cubeta.
+         * @return El límite superior de la cubeta.
+         */
+        static long limiteSuperior(int cubeta) {
+            if (cubeta < SUBCUBETAS) {
+                return cubeta;
+            }
+            int exponente = cubeta / SUBCUBETAS + BITS_SUBCUBETA - 1;
+            long base = SUBCUBETAS + cubeta % SUBCUBETAS;
+            int desplazamiento = exponente - BITS_SUBCUBETA;
+            return ((base + 1) << desplazamiento) - 1;
+        }
+
+        /**
+         * Obtiene la cantidad de valores registrados.
+         *
+         * @return La cantidad de valores.
+         */
+        public long getCantidad() {
+            return cantidad.sum();
+        }
+
+        /**
+         * Obtiene el promedio de los valores registrados.
+         *
+         * @return El promedio, o 0 si no hay valores.
+         */
+        public double getMedia() {
+            long n = cantidad.sum();
+            return n == 0 ? 0 : (double) suma.sum() / n;
+        }
+
+        /**
+         * Obtiene el mayor valor registrado.
+         *
+         * @return El máximo.
+         */
+        public long getMaximo() {
+            return maximo.get();
+        }
+
+        /**
+         * Obtiene un percentil de los valores registrados, como el límite superior de la cubeta que lo
+         * contiene (sin pasar del máximo).
+         *
+         * @param percentil El percentil, entre 0 y 100.
+         * @return El valor del percentil, o 0 si no hay valores.
+         */
+        public long percentil(double percentil) {
+            long[] copia = new long[CUBETAS];
+            long total = 0;
+            for (int i = 0; i < CUBETAS; i++) {
+                copia[i] = cubetas.get(i);
+                total += copia[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long objetivo = Math.max(1, (long) Math.ceil(total * percentil / 100.0));
+            long acumulado = 0;
+            for (int i = 0; i < CUBETAS; i++) {
+                acumulado += copia[i];
+                if (acumulado >= objetivo) {
+                    return Math.min(limiteSuperior(i), getMaximo());
+                }
+            }
+            return getMaximo();
+        }
+    }
+
+    /**
+     * Obtiene un contador por su nombre, creándolo si no existe.
+     *
+     * @param nombre El nombre del contador, por ejemplo {@code servidor.recibidos}.
+     * @return El contador.
+     */
+    public static Contador contador(String nombre) {
+        return contadores.computeIfAbsent(nombre, n -> new Contador());
+    }
+
+    /**
+     * Obtiene un histograma por su nombre, creándolo si no existe.
+     *
+     * @param nombre El nombre del histograma, por ejemplo {@code servidor.difusion}.
+     * @return El histograma.
+     */
+    public static Histograma histograma(String nombre) {
+        return histogramas.computeIfAbsent(nombre, n -> new Histograma());
+    }
+
+    /**
+     * Escribe todas las métricas como texto, una por línea, ordenadas por nombre. Las latencias se
+     * muestran en microsegundos.
+     *
+     * @return El texto de las métricas.
+     */
+    public static String texto() {
+        StringBuilder texto = new StringBuilder();
+        for (Map.Entry<String, Contador> entrada : new ConcurrentSkipListMap<String, Contador>(contadores).entrySet()) {
+            texto.append(entrada.getKey()).append(' ').append(entrada.getValue().getValor()).append('\n');
+        }
+        for (Map.Entry<String, Histograma> entrada : new ConcurrentSkipListMap<String, Histograma>(histogramas).entrySet()) {
+            Histograma h = entrada.getValue();
+            texto.append(String.format("%s n=%d media=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus%n",
+                    entrada.getKey(), h.getCantidad(), h.getMedia() / 1e3, h.percentil(50) / 1e3,
+                    h.percentil(99) / 1e3, h.percentil(99.9) / 1e3, h.getMaximo() / 1e3));
+        }
+        return texto.toString();
+    }
+
+    /**
+     * Escribe las métricas en la salida dada cada cierto tiempo, desde un hilo demonio. Llamarlo otra
+     * vez reemplaza el volcado anterior.
+     *
+     * @param periodoSegundos El tiempo entre volcados.
+     * @param salida          Donde se escriben las métricas.
+     */
+    public static synchronized void iniciarVolcado(long periodoSegundos, PrintStream salida) {
+        if (volcado != null) {
+            volcado.shutdownNow();
+        }
+        volcado = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "volcado-metricas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        volcado.scheduleAtFixedRate(() -> salida.print(texto()), periodoSegundos, periodoSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Registra las métricas en el servidor JMX de la plataforma e inicia el volcado de texto si la
+     * propiedad de sistema {@code metricas.volcado} indica un periodo en segundos mayor que 0.
+     */
+    public static void iniciarDesdePropiedades() {
+        registrarJmx();
+        long periodo = Long.getLong("metricas.volcado", 0L);
+        if (periodo > 0) {
+            iniciarVolcado(periodo, System.out);
+        }
+    }
+
+    /**
+     * Registra las métricas en el servidor JMX de la plataforma, si no están registradas ya.
+     */
+    public static synchronized void registrarJmx() {
+        try {
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            ObjectName nombre = new ObjectName(NOMBRE_JMX);
+            if (!servidor.isRegistered(nombre)) {
+                servidor.registerMBean(new Jmx(), nombre);
+            }
+        } catch (JMException e) {
+            System.out.println(e);
+        }
+    }
+
+    /**
+     * Clase interna que expone las métricas por JMX. Cada contador es un atributo con su nombre y cada
+     * histograma tiene los atributos {@code nombre.cantidad}, {@code .media}, {@code .p50},
+     * {@code .p99}, {@code .p999} y {@code .maximo}, en nanosegundos.
+     */
+    private static final class Jmx implements DynamicMBean {
+        private static final String[] CAMPOS = {"cantidad", "media", "p50", "p99", "p999", "maximo"};
+
+        @Override
+        public Object getAttribute(String atributo) throws AttributeNotFoundException {
+            Contador contador = contadores.get(atributo);
+            if (contador != null) {
+                return contador.getValor();
+            }
+            int punto = atributo.lastIndexOf('.');
+            Histograma h = punto < 0 ? null : histogramas.get(atributo.substring(0, punto));
+            if (h != null) {
+                switch (atributo.substring(punto + 1)) {
+                    case "cantidad":
+                        return h.getCantidad();
+                    case "media":
+                        return h.getMedia();
+                    case "p50":
+                        return h.percentil(50);
+                    case "p99":
+                        return h.percentil(99);
+                    case "p999":
+                        return h.percentil(99.9);
+                    case "maximo":
+                        return h.getMaximo();
+                    default:
+                        break;
+                }
+            }
+            throw new AttributeNotFoundException(atributo);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] atributos) {
+            AttributeList lista = new AttributeList();
+            for (String atributo : atributos) {
+                try {
+                    lista.add(new Attribute(atributo, getAttribute(atributo)));
+                } catch (AttributeNotFoundException e) {
+                    // Se omiten los atributos que no existen
+                }
+            }
+            return lista;
+        }
+
+        @Override
+        public void setAttribute(Attribute atributo) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Las métricas son de solo lectura");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList atributos) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String accion, Object[] parametros, String[] firma) {
+            if ("texto".equals(accion)) {
+                return texto();
+            }
+            throw new UnsupportedOperationException(accion);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> atributos = new ArrayList<MBeanAttributeInfo>();
+            for (String nombre : new ConcurrentSkipListMap<String, Contador>(contadores).keySet()) {
+                atributos.add(new MBeanAttributeInfo(nombre, "long", "Contador", true, false, false));
+            }
+            for (String nombre : new ConcurrentSkipListMap<String, Histograma>(histogramas).keySet()) {
+                for (String campo : CAMPOS) {
+                    String tipo = campo.equals("media") ? "double" : "long";
+                    atributos.add(new MBeanAttributeInfo(nombre + "." + campo, tipo, "Histograma (ns)", true, false, false));
+                }
+            }
+            MBeanOperationInfo[] operaciones = {new MBeanOperationInfo("texto", "Las métricas como texto",
+                    new MBeanParameterInfo[0], "java.lang.String", MBeanOperationInfo.INFO)};
+            return new MBeanInfo(Metricas.class.getName(), "Métricas de la calculadora",
+                    atributos.toArray(new MBeanAttributeInfo[0]), null, operaciones, null);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Esta clase define el protocolo binario por tramas del servidor de evaluación.
+ *
+ * Cada trama tiene una cabecera de 9 bytes: el tipo (1 byte), el identificador de correlación
+ * (4 bytes) y la longitud de la carga (4 bytes), seguida de la carga. Un cliente puede enviar muchas
+ * peticiones sin esperar las respuestas; cada respuesta lleva el identificador de su petición y
+ * pueden llegar en cualquier orden.
+ * <pre>
+ * EVALUAR    cliente → servidor  carga: modo (1 byte) + expresión en UTF-8
+ * RESULTADO  servidor → cliente  carga: resultado en UTF-8
+ * ERROR      servidor → cliente  carga: mensaje en UTF-8
+ * </pre>
+ */
+public final class Protocolo {
+
+    /**
+     * Puerto en el que el servidor atiende el protocolo por tramas.
+     */
+    static final int PUERTO = 6001;
+
+    /**
+     * Longitud máxima de la carga de una trama.
+     */
+    static final int MAX_CARGA = 1 << 20;
+
+    /** Petición de evaluación. */
+    static final byte EVALUAR = 1;
+    /** Respuesta con el resultado de una evaluación. */
+    static final byte RESULTADO = 2;
+    /** Respuesta con el error de una evaluación. */
+    static final byte ERROR = 3;
+
+    /**
+     * Nombres de los modos de evaluación, indexados por el byte de modo de la carga.
+     */
+    static final String[] MODOS = {"alge", "logic", "integral"};
+
+    private Protocolo() {
+    }
+
+    /**
+     * Clase interna que representa una trama leída.
+     */
+    static final class Trama {
+        final byte tipo;
+        final int id;
+        final byte[] carga;
+
+        /**
+         * Constructor de una trama.
+         *
+         * @param tipo  El tipo de la trama.
+         * @param id    El identificador de correlación.
+         * @param carga La carga.
+         */
+        Trama(byte tipo, int id, byte[] carga) {
+            this.tipo = tipo;
+            this.id = id;
+            this.carga = carga;
+        }
+
+        /**
+         * Obtiene la carga como texto UTF-8, desde la posición dada.
+         *
+         * @param desde La posición del primer byte del texto.
+         * @return El texto.
+         */
+        String texto(int desde) {
+            return new String(carga, desde, carga.length - desde, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Obtiene el byte de un modo de evaluación.
+     *
+     * @param modo El nombre del modo.
+     * @return El byte del modo.
+     * @throws IllegalArgumentException si el modo no existe.
+     */
+    static byte modo(String modo) {
+        for (int i = 0; i < MODOS.length; i++) {
+            if (MODOS[i].equals(modo)) {
+                return (byte) i;
+            }
+        }
+        throw new IllegalArgumentException("Modo desconocido: " + modo);
+    }
+
+    /**
+     * Lee una trama completa.
+     *
+     * @param in El flujo de entrada.
+     * @return La trama leída.
+     * @throws java.io.EOFException si la conexión se cerró.
+     * @throws IOException si la longitud de la carga no es válida o falla la lectura.
+     */
+    static Trama leer(DataInputStream in) throws IOException {
+        byte tipo = in.readByte();
+        int id = in.readInt();
+        int longitud = in.readInt();
+        if (longitud < 0 || longitud > MAX_CARGA) {
+            throw new IOException("Longitud de trama inválida: " + longitud);
+        }
+        byte[] carga = new byte[longitud];
+        in.readFully(carga);
+        return new Trama(tipo, id, carga);
+    }
+
+    /**
+     * Escribe una trama sin vaciar el flujo, para que varias tramas salgan juntas.
+     *
+     * @param out   El flujo de salida.
+     * @param tipo  El tipo de la trama.
+     * @param id    El identificador de correlación.
+     * @param carga La carga.
+     * @throws IOException si falla la escritura.
+     */
+    static void escribir(DataOutputStream out, byte tipo, int id, byte[] carga) throws IOException {
+        out.writeByte(tipo);
+        out.writeInt(id);
+        out.writeInt(carga.length);
+        out.write(carga);
+    }
+
+    /**
+     * Arma la carga de una petición de evaluación.
+     *
+     * @param modo      El nombre del modo.
+     * @param expresion La expresión.
+     * @return La carga.
+     */
+    static byte[] peticion(String modo, String expresion) {
+        byte[] texto = expresion.getBytes(StandardCharsets.UTF_8);
+        byte[] carga = new byte[texto.length + 1];
+        carga[0] = modo(modo);
+        System.arraycopy(texto, 0, carga, 1, texto.length);
+        return carga;
+    }
+}
@@ -1,5 +1,5 @@
-import com.fathzer.soft.javaluator.DoubleEvaluator;
-
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
 
 /**
@@ -7,11 +7,27 @@ import java.util.function.Function;
  */
 class Expresion {
     /**
-     * Evalúa la expresión.
+     * Entorno vacío: todas las variables valen 0.0.
+     */
+    static final double[] SIN_VARIABLES = new double[0];
+
+    /**
+     * Evalúa la expresión con todas las variables en 0.0.
      *
      * @return Resultado de la evaluación.
      */
     public double evaluar() {
+        return evaluar(SIN_VARIABLES);
+    }
+
+    /**
+     * Evalúa la expresión en un entorno de variables. Cada variable lee su valor de la posición
+     * que tiene asignada en el arreglo, sin convertir a objetos.
+     *
+     * @param entorno Valores de las variables, indexados por posición.
+     * @return Resultado de la evaluación.
+     */
+    public double evaluar(double[] entorno) {
         return 0.0;
     }
 }
@@ -32,7 +48,7 @@ class Numero extends Expresion {
     /**
      * {@inheritDoc}
      */
-    public double evaluar() {
+    public double evaluar(double[] entorno) {
         return valor;
     }
 }
@@ -41,9 +57,20 @@ class Numero extends Expresion {
  */
 class Variable extends Expresion {
     private String nombre;
+    private int posicion;
     private Function<Double, Double> funcion;
     /**
-     * Constructor para una variable.
+     * Constructor para una variable que lee su valor de una posición del entorno.
+     *
+     * @param nombre Nombre de la variable.
+     * @param posicion Posición del valor de la variable en el entorno.
+     */
+    public Variable(String nombre, int posicion) {
+        this.nombre = nombre;
+        this.posicion = posicion;
+    }
+    /**
+     * Constructor para una variable cuyo valor es una función aplicada a la posición 0 del entorno.
      *
      * @param nombre Nombre de la variable.
      * @param funcion Función asociada a la variable.
@@ -52,12 +79,29 @@ class Variable extends Expresion {
         this.nombre = nombre;
         this.funcion = funcion;
     }
+    /**
+     * Obtiene el nombre de la variable.
+     *
+     * @return Nombre de la variable.
+     */
+    public String getNombre() {
+        return nombre;
+    }
+    /**
+     * Obtiene la posición del valor de la variable en el entorno.
+     *
+     * @return Posición en el entorno.
+     */
+    public int getPosicion() {
+        return posicion;
+    }
     /**
      * {@inheritDoc}
+     * Una posición fuera del entorno vale 0.0.
      */
-    public double evaluar() {
-        // Evaluar la variable en un valor específico usando la función proporcionada
-        return funcion.apply(0.0); // Puedes reemplazar 0.0 con el valor deseado
+    public double evaluar(double[] entorno) {
+        double valor = posicion < entorno.length ? entorno[posicion] : 0.0;
+        return funcion == null ? valor : funcion.apply(valor);
     }
 }
 /**
@@ -82,9 +126,9 @@ class OperadorBinario extends Expresion {
     /**
      * {@inheritDoc}
      */
-    public double evaluar() {
-        double izq = izquierda.evaluar();
-        double der = derecha.evaluar();
+    public double evaluar(double[] entorno) {
+        double izq = izquierda.evaluar(entorno);
+        double der = derecha.evaluar(entorno);
         switch (operador) {
             case '+':
                 return izq + der;
@@ -107,6 +151,7 @@ class IntegralDefinida extends Expresion {
     private Variable variable;
     private double limiteInferior;
     private double limiteSuperior;
+    private boolean paralelo;
     /**
      * Constructor para una integral definida.
      *
@@ -116,42 +161,68 @@ class IntegralDefinida extends Expresion {
      * @param limiteSuperior Límite superior de integración.
      */
     public IntegralDefinida(Expresion funcion, Variable variable, double limiteInferior, double limiteSuperior) {
+        this(funcion, variable, limiteInferior, limiteSuperior, false);
+    }
+    /**
+     * Constructor para una integral definida que puede calcularse en paralelo.
+     *
+     * @param funcion Función a integrar.
+     * @param variable Variable de integración.
+     * @param limiteInferior Límite inferior de integración.
+     * @param limiteSuperior Límite superior de integración.
+     * @param paralelo true para repartir la partición entre todos los núcleos.
+     */
+    public IntegralDefinida(Expresion funcion, Variable variable, double limiteInferior, double limiteSuperior, boolean paralelo) {
         this.funcion = funcion;
         this.variable = variable;
         this.limiteInferior = limiteInferior;
         this.limiteSuperior = limiteSuperior;
+        this.paralelo = paralelo;
     }
     /**
      * {@inheritDoc}
+     * La variable de integración toma en su posición cada punto de la partición; las demás
+     * posiciones conservan los valores del entorno recibido.
      */
-    public double evaluar() {
+    public double evaluar(double[] entorno) {
         // Método de aproximación numérica para calcular la integral definida
-        int numIntervalos = 1000000; // Puedes ajustar la cantidad de intervalos
-        double anchoIntervalo = (limiteSuperior - limiteInferior) / numIntervalos;
-        double suma = 0.0;
-
-        for (int i = 0; i < numIntervalos; i++) {
-            double x1 = limiteInferior + i * anchoIntervalo;
-            double x2 = x1 + anchoIntervalo;
-            double area = (funcion.evaluar() + funcion.evaluar()) / 2 * anchoIntervalo;
-            suma += area;
+        int posicion = variable.getPosicion();
+        int tamano = Math.max(entorno.length, posicion + 1);
+        if (paralelo) {
+            // Cada hilo necesita su propia copia del entorno
+            ThreadLocal<double[]> local = ThreadLocal.withInitial(() -> Arrays.copyOf(entorno, tamano));
+            DoubleUnaryOperator integrando = x -> {
+                double[] copia = local.get();
+                copia[posicion] = x;
+                return funcion.evaluar(copia);
+            };
+            return Integrador.trapecioParalelo(integrando, limiteInferior, limiteSuperior, Protree.NUM_INTERVALOS);
         }
-
-        return suma;
+        double[] copia = Arrays.copyOf(entorno, tamano);
+        DoubleUnaryOperator integrando = x -> {
+            copia[posicion] = x;
+            return funcion.evaluar(copia);
+        };
+        return Integrador.trapecio(integrando, limiteInferior, limiteSuperior, Protree.NUM_INTERVALOS);
     }
 }
 /**
  * Clase principal que contiene métodos para evaluar y calcular integrales.
  */
 public class Protree {
+    /**
+     * Cantidad de intervalos de la regla del trapecio.
+     */
+    static final int NUM_INTERVALOS = 1000000;
+
+    private static final Metricas.Histograma INTEGRACION = Metricas.histograma("integral.calculo");
+
     /**
      * Punto de entrada principal.
      *
      * @param args Argumentos de línea de comando.
      */
     public static void main(String[] args) {
-        DoubleEvaluator evaluator = new DoubleEvaluator();
-
         // Permite al usuario ingresar la expresión matemática
         String expresion = "x^3 + 1"; // Ejemplo de expresión
         // Define los límites de integración
@@ -159,53 +230,76 @@ public class Protree {
         double limiteSuperior = 10.0;
         // Añadir código para permitir al usuario ingresar los límites de integración
 
-        int numIntervalos = 1000000; // Ajusta el número de intervalos
-        double anchoIntervalo = (limiteSuperior - limiteInferior) / numIntervalos;
-        double suma = 0.0;
-
-        for (int i = 0; i < numIntervalos; i++) {
-            double x1 = limiteInferior + i * anchoIntervalo;
-            double x2 = x1 + anchoIntervalo;
-            // Evalúa la función en los puntos del intervalo
-            double area = (evaluarFuncion(expresion, x1) + evaluarFuncion(expresion, x2)) / 2 * anchoIntervalo;
-            suma += area;
-        }
+        double suma = calculateIntegral(expresion, limiteInferior, limiteSuperior);
 
         System.out.println("El resultado de la integral definida es: " + suma);
     }
     /**
      * Calcula la integral definida de una expresión entre dos límites.
+     * La expresión se compila una sola vez y luego se evalúa en cada punto de la partición.
      *
      * @param expresion Expresión a integrar.
      * @param limiteInferior Límite inferior de integración.
      * @param limiteSuperior Límite superior de integración.
      * @return Resultado de la integral.
+     * @throws IllegalArgumentException si la expresión no es una función válida de {@code x}.
      */
     public static double calculateIntegral(String expresion, double limiteInferior, double limiteSuperior) {
-        int numIntervalos = 1000000; // Ajusta el número de intervalos
-        double anchoIntervalo = (limiteSuperior - limiteInferior) / numIntervalos;
-        double suma = 0.0;
+        return calculateIntegral(expresion, limiteInferior, limiteSuperior, false);
+    }
 
-        for (int i = 0; i < numIntervalos; i++) {
-            double x1 = limiteInferior + i * anchoIntervalo;
-            double x2 = x1 + anchoIntervalo;
-            // Evalúa la función en los puntos del intervalo
-            double area = (evaluarFuncion(expresion, x1) + evaluarFuncion(expresion, x2)) / 2 * anchoIntervalo;
-            suma += area;
-        }
+    /**
+     * Calcula la integral definida de una expresión entre dos límites, opcionalmente en paralelo.
+     * En modo paralelo la partición se reparte entre todos los núcleos y el resultado sigue siendo determinista.
+     *
+     * @param expresion Expresión a integrar.
+     * @param limiteInferior Límite inferior de integración.
+     * @param limiteSuperior Límite superior de integración.
+     * @param paralelo true para usar el modo paralelo.
+     * @return Resultado de la integral.
+     * @throws IllegalArgumentException si la expresión no es una función válida de {@code x}.
+     */
+    public static double calculateIntegral(String expresion, double limiteInferior, double limiteSuperior, boolean paralelo) {
+        long inicio = System.nanoTime();
+        DoubleUnaryOperator funcion = compilarFuncion(expresion);
+        double resultado = paralelo
+                ? Integrador.trapecioParalelo(funcion, limiteInferior, limiteSuperior, NUM_INTERVALOS)
+                : Integrador.trapecio(funcion, limiteInferior, limiteSuperior, NUM_INTERVALOS);
+        INTEGRACION.registrarDesde(inicio);
+        return resultado;
+    }
 
-        return suma;  // Devuelve el resultado de la integral
+    /**
+     * Calcula la integral definida de una expresión con cuadratura adaptativa, refinando solo
+     * donde la función lo necesita en lugar de usar siempre {@link #NUM_INTERVALOS} intervalos.
+     *
+     * @param expresion Expresión a integrar.
+     * @param limiteInferior Límite inferior de integración.
+     * @param limiteSuperior Límite superior de integración.
+     * @param toleranciaAbsoluta Error absoluto aceptado.
+     * @param toleranciaRelativa Error relativo aceptado.
+     * @return El resultado, con el error estimado y la cantidad de evaluaciones usadas.
+     * @throws IllegalArgumentException si la expresión no es una función válida de {@code x}.
+     */
+    public static Integrador.ResultadoIntegral calculateIntegralAdaptativa(String expresion, double limiteInferior, double limiteSuperior,
+                                                                          double toleranciaAbsoluta, double toleranciaRelativa) {
+        long inicio = System.nanoTime();
+        Integrador.ResultadoIntegral resultado = Integrador.adaptativo(compilarFuncion(expresion), limiteInferior,
+                limiteSuperior, toleranciaAbsoluta, toleranciaRelativa, Integrador.MAX_SUBINTERVALOS);
+        INTEGRACION.registrarDesde(inicio);
+        return resultado;
     }
 
     /**
-     * Evalúa una expresión en un valor específico.
+     * Compila una expresión de {@code x} para evaluarla muchas veces.
+     * La función compilada es inmutable, así los hilos del modo paralelo la comparten sin volver
+     * a analizar el texto en cada punto.
      *
-     * @param expresion Expresión a evaluar.
-     * @param x Valor en el que se evaluará la expresión.
-     * @return Resultado de la evaluación.
+     * @param expresion Expresión a compilar.
+     * @return Función de {@code x}.
+     * @throws IllegalArgumentException si {@link FuncionCompilada} no reconoce la expresión.
      */
-    private static double evaluarFuncion(String expresion, double x) {
-        DoubleEvaluator evaluator = new DoubleEvaluator();
-        return evaluator.evaluate(expresion.replace("x", String.valueOf(x)));
+    static DoubleUnaryOperator compilarFuncion(String expresion) {
+        return FuncionCompilada.compilar(expresion);
     }
-}
\ No newline at end of file
+}
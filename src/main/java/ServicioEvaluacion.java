@@ -0,0 +1,252 @@
+import java.io.Closeable;
+import java.math.MathContext;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Esta clase evalúa expresiones en el servidor, en un grupo de hilos, para que los clientes no tengan
+ * que calcular los resultados por su cuenta.
+ *
+ * Una petición es un mensaje de texto con el formato {@code EVAL|id|modo|expresion}, donde {@code id}
+ * es un identificador elegido por el cliente para relacionar la respuesta y {@code modo} es
+ * {@code alge}, {@code logic} o {@code integral}. En el modo integral la expresión tiene el formato
+ * {@code funcion;a;b}. La respuesta es {@code RES|id|ok|resultado} o {@code RES|id|err|mensaje} y se
+ * envía solo a quien hizo la petición. Las respuestas pueden llegar en un orden distinto al de las
+ * peticiones.
+ */
+public class ServicioEvaluacion implements Closeable {
+
+    /**
+     * Prefijo de los mensajes de petición.
+     */
+    static final String PETICION = "EVAL|";
+
+    /**
+     * Prefijo de los mensajes de respuesta.
+     */
+    static final String RESPUESTA = "RES|";
+
+    /**
+     * Cantidad máxima de peticiones esperando un hilo; las demás se rechazan con un error.
+     */
+    static final int MAX_PENDIENTES = 4096;
+
+    private static final Metricas.Histograma EVALUACION_ALGEBRAICA = Metricas.histograma("evaluacion.alge");
+    private static final Metricas.Histograma EVALUACION_LOGICA = Metricas.histograma("evaluacion.logic");
+    private static final Metricas.Histograma EVALUACION_INTEGRAL = Metricas.histograma("evaluacion.integral");
+    private static final Metricas.Contador ERRORES = Metricas.contador("evaluacion.errores");
+
+    /**
+     * Precisión de las expresiones algebraicas, de la propiedad de sistema {@code evaluacion.precision}:
+     * {@code simple} (el valor por omisión, el {@code float} que muestra el cliente), {@code doble}, o
+     * una cantidad de dígitos decimales para evaluar con {@link java.math.BigDecimal}. Un valor no válido
+     * se informa y se reemplaza por {@code simple}.
+     */
+    private static final String PRECISION = leerPrecision(System.getProperty("evaluacion.precision", "simple"));
+    private static final MathContext DECIMAL = contextoDecimal(PRECISION);
+
+    private final ThreadPoolExecutor hilos;
+
+    /**
+     * Crea un servicio con un hilo por procesador, o la cantidad de la propiedad de sistema
+     * {@code evaluacion.hilos}.
+     */
+    public ServicioEvaluacion() {
+        this(Integer.getInteger("evaluacion.hilos", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Crea un servicio con la cantidad de hilos dada.
+     *
+     * @param cantidadHilos La cantidad de hilos que evalúan expresiones.
+     */
+    public ServicioEvaluacion(int cantidadHilos) {
+        this.hilos = new ThreadPoolExecutor(cantidadHilos, cantidadHilos, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDIENTES), tarea -> {
+                    Thread hilo = new Thread(tarea, "evaluacion");
+                    hilo.setDaemon(true);
+                    return hilo;
+                });
+    }
+
+    /**
+     * Verifica si un mensaje es una petición de evaluación.
+     *
+     * @param mensaje El mensaje recibido.
+     * @return true si el mensaje empieza con {@code EVAL|}.
+     */
+    public static boolean esPeticion(String mensaje) {
+        return mensaje.startsWith(PETICION);
+    }
+
+    /**
+     * Evalúa una petición en el grupo de hilos y entrega la respuesta a {@code responder}, desde el
+     * hilo que la evaluó. Si la petición no tiene el formato esperado o hay demasiadas peticiones
+     * pendientes, la respuesta de error se entrega de inmediato.
+     *
+     * @param mensaje   La petición {@code EVAL|id|modo|expresion}.
+     * @param responder La acción que envía la respuesta al cliente.
+     */
+    public void atender(String mensaje, Consumer<String> responder) {
+        int primera = mensaje.indexOf('|', PETICION.length());
+        int segunda = primera < 0 ? -1 : mensaje.indexOf('|', primera + 1);
+        if (segunda < 0) {
+            String id = primera < 0 ? "" : mensaje.substring(PETICION.length(), primera);
+            responder.accept(error(id, "Petición inválida"));
+            return;
+        }
+        String id = mensaje.substring(PETICION.length(), primera);
+        atender(mensaje.substring(primera + 1, segunda), mensaje.substring(segunda + 1),
+                (exito, texto) -> responder.accept(exito ? RESPUESTA + id + "|ok|" + texto : error(id, texto)));
+    }
+
+    /**
+     * Evalúa una expresión en el grupo de hilos y entrega el resultado a {@code responder}, desde el
+     * hilo que la evaluó. Si hay demasiadas peticiones pendientes, el error se entrega de inmediato.
+     *
+     * @param modo      El modo de la expresión.
+     * @param expresion La expresión.
+     * @param responder Recibe true y el resultado, o false y la descripción del error.
+     */
+    public void atender(String modo, String expresion, BiConsumer<Boolean, String> responder) {
+        try {
+            hilos.execute(() -> {
+                String resultado;
+                try {
+                    resultado = evaluar(modo, expresion);
+                } catch (RuntimeException e) {
+                    responder.accept(false, e.getMessage() == null ? e.toString() : e.getMessage());
+                    return;
+                }
+                responder.accept(true, resultado);
+            });
+        } catch (RejectedExecutionException e) {
+            responder.accept(false, "Servidor ocupado");
+        }
+    }
+
+    /**
+     * Arma una respuesta de error.
+     *
+     * @param id      El identificador de la petición.
+     * @param mensaje La descripción del error.
+     * @return La respuesta {@code RES|id|err|mensaje}.
+     */
+    private static String error(String id, String mensaje) {
+        return RESPUESTA + id + "|err|" + mensaje;
+    }
+
+    /**
+     * Evalúa una expresión según su modo y devuelve el resultado con el mismo formato que muestra el cliente.
+     *
+     * @param modo      {@code alge}, {@code logic} o {@code integral}.
+     * @param expresion La expresión; en el modo integral, {@code funcion;a;b}.
+     * @return El resultado como texto.
+     * @throws IllegalArgumentException si el modo no existe o la expresión no es válida.
+     */
+    public static String evaluar(String modo, String expresion) {
+        long inicio = System.nanoTime();
+        try {
+            switch (modo) {
+                case "alge":
+                    String algebraico = evaluarAlgebraica(AlgebraicTree.compile(expresion));
+                    EVALUACION_ALGEBRAICA.registrarDesde(inicio);
+                    return algebraico;
+                case "logic":
+                    String logico = Boolean.toString(LogicTree.compile(expresion).evaluate());
+                    EVALUACION_LOGICA.registrarDesde(inicio);
+                    return logico;
+                case "integral":
+                    String integral = evaluarIntegral(expresion);
+                    EVALUACION_INTEGRAL.registrarDesde(inicio);
+                    return integral;
+                default:
+                    throw new IllegalArgumentException("Modo desconocido: " + modo);
+            }
+        } catch (RuntimeException e) {
+            ERRORES.incrementar();
+            throw e;
+        }
+    }
+
+    /**
+     * Evalúa una expresión algebraica con la precisión configurada.
+     *
+     * @param expresion La expresión compilada.
+     * @return El resultado como texto.
+     */
+    private static String evaluarAlgebraica(CompiledExpression expresion) {
+        if (DECIMAL != null) {
+            return expresion.evaluate(DECIMAL).toPlainString();
+        }
+        if (PRECISION.equals("doble")) {
+            return Double.toString(expresion.evaluateDouble());
+        }
+        return Float.toString(expresion.evaluate());
+    }
+
+    /**
+     * Valida la precisión configurada. Se valida aquí y no se lanza una excepción porque un error en la
+     * inicialización de la clase la dejaría inutilizable para todo el proceso.
+     *
+     * @param precision El valor de la propiedad.
+     * @return La precisión si es válida, o {@code simple} si no lo es.
+     */
+    private static String leerPrecision(String precision) {
+        if (precision.equals("simple") || precision.equals("doble")) {
+            return precision;
+        }
+        try {
+            if (Integer.parseInt(precision) > 0) {
+                return precision;
+            }
+        } catch (NumberFormatException e) {
+            // Se informa abajo igual que un número no positivo
+        }
+        System.err.println("evaluacion.precision debe ser simple, doble o una cantidad de dígitos positiva: "
+                + precision + "; se usa simple");
+        return "simple";
+    }
+
+    /**
+     * Obtiene el contexto decimal de una precisión ya validada.
+     *
+     * @param precision {@code simple}, {@code doble} o una cantidad de dígitos.
+     * @return El contexto con esa cantidad de dígitos, o null si la precisión no es decimal.
+     */
+    private static MathContext contextoDecimal(String precision) {
+        if (precision.equals("simple") || precision.equals("doble")) {
+            return null;
+        }
+        return new MathContext(Integer.parseInt(precision));
+    }
+
+    /**
+     * Calcula una integral escrita como {@code funcion;a;b}.
+     *
+     * @param expresion La integral.
+     * @return El resultado como texto.
+     * @throws IllegalArgumentException si la integral no tiene el formato esperado.
+     */
+    private static String evaluarIntegral(String expresion) {
+        String[] partes = expresion.split(";");
+        if (partes.length != 3) {
+            throw new IllegalArgumentException("La integral debe tener el formato funcion;a;b");
+        }
+        double a = Double.parseDouble(partes[1].trim());
+        double b = Double.parseDouble(partes[2].trim());
+        return Double.toString(Protree.calculateIntegral(partes[0], a, b));
+    }
+
+    /**
+     * Detiene el grupo de hilos; las peticiones pendientes se descartan.
+     */
+    @Override
+    public void close() {
+        hilos.shutdownNow();
+    }
+}
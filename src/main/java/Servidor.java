@@ -1,86 +1,410 @@
 
-
 import java.io.*;
+import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.LinkedList;
-import java.util.Objects;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Esta clase representa un servidor que escucha conexiones entrantes y reenvía mensajes a múltiples clientes
  * conectados a través de diferentes puertos.
+ * Cada conexión aceptada se atiende en su propio hilo, así un cliente lento o una escritura lenta
+ * en el historial no detienen a los demás clientes.
+ *
+ * Cada conexión es persistente y de dos vías: el cliente puede enviar varios mensajes por la misma
+ * conexión y recibe por ella los mensajes difundidos, sin registrar un puerto aparte. Los clientes
+ * antiguos, que envían un solo mensaje por conexión y registran un puerto con un "0" inicial,
+ * siguen funcionando.
+ *
+ * Un cliente también puede pedir que el servidor evalúe una expresión con un mensaje
+ * {@code EVAL|id|modo|expresion}; la respuesta llega solo a ese cliente (ver {@link ServicioEvaluacion}).
  */
-public class Servidor{
+public class Servidor implements Closeable {
+
+    /**
+     * Puerto en el que escucha el servidor por defecto.
+     */
+    static final int PUERTO = 6000;
+
+    /**
+     * Segundos que {@link #close()} espera a que terminen los hilos de las sesiones antes de cerrar
+     * el historial.
+     */
+    static final int ESPERA_CIERRE = 5;
+
+    private static final Metricas.Contador RECIBIDOS = Metricas.contador("servidor.recibidos");
+    private static final Metricas.Contador DIFUNDIDOS = Metricas.contador("servidor.difundidos");
+    private static final Metricas.Histograma DIFUSION = Metricas.histograma("servidor.difusion");
+    private static final Metricas.Histograma REGISTRO_HISTORIAL = Metricas.histograma("servidor.historial");
+    private static final Metricas.Contador ATRASADAS = Metricas.contador("servidor.atrasadas");
+
+    private final ServerSocket server;
+    private final ExecutorService hilos;
+    private final Historial historial;
+    private final ServicioEvaluacion servicio = new ServicioEvaluacion();
+    private final List<Integer> lista_puertos = new CopyOnWriteArrayList<Integer>();
+    private final List<Sesion> sesiones = new CopyOnWriteArrayList<Sesion>();
 
     /**
-     * Escribe datos en un archivo CSV llamado "historial.csv".
+     * Clase interna que representa una conexión abierta con un cliente.
      *
-     * @param data Los datos a escribir en el archivo CSV.
+     * Los mensajes salientes pasan por una cola acotada que vacía un hilo escritor propio de la
+     * sesión, así quien difunde nunca espera a un cliente lento. Una sesión que acumula más de
+     * {@link #MAX_PENDIENTES} mensajes sin escribir se desconecta.
      */
-    private static void writeToCSV(String data) {
-        File file = new File("historial.csv");
+    static class Sesion {
+        /**
+         * Cantidad máxima de mensajes pendientes de escribir por sesión.
+         */
+        static final int MAX_PENDIENTES = 1024;
+
+        /**
+         * Marca que despierta al escritor para que termine; se compara por identidad.
+         */
+        private static final String FIN = new String();
+
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final BlockingQueue<String> pendientes = new ArrayBlockingQueue<String>(MAX_PENDIENTES);
+        private volatile boolean cerrada;
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file, true))) {
-            if (!file.exists() || file.length() == 0) {
-                bw.write("Puerto,Expresion,Resultado,Fecha");
-                bw.newLine();
+        /**
+         * Constructor de una sesión sobre un socket ya conectado.
+         *
+         * @param socket El socket de la conexión.
+         * @throws IOException si no se puede obtener el flujo de salida.
+         */
+        Sesion(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Encola un mensaje para enviarlo por la conexión, sin esperar. Se puede llamar desde varios
+         * hilos a la vez. Si la cola está llena el cliente se considera atrasado y la sesión se cierra.
+         *
+         * @param mensaje El mensaje a enviar.
+         * @return true si el mensaje se encoló, false si la sesión está cerrada o se cerró por atrasarse.
+         */
+        boolean enviar(String mensaje) {
+            if (cerrada) {
+                return false;
             }
-            bw.write(data);
-            bw.newLine();
-        } catch (IOException e) {
+            if (!pendientes.offer(mensaje)) {
+                ATRASADAS.incrementar();
+                cerrar();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Ciclo del hilo escritor: escribe los mensajes encolados y vacía el búfer cuando la cola queda
+         * vacía, hasta que la sesión se cierre o falle una escritura.
+         */
+        void escribir() {
+            try {
+                while (true) {
+                    String mensaje = pendientes.take();
+                    if (mensaje == FIN) {
+                        return;
+                    }
+                    out.writeUTF(mensaje);
+                    if (pendientes.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // La conexión se cerró; el hilo lector la elimina
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                cerrar();
+            }
+        }
+
+        /**
+         * Cierra la conexión: el hilo lector sale de su lectura bloqueada y el escritor termina.
+         */
+        void cerrar() {
+            cerrada = true;
+            pendientes.clear();
+            pendientes.offer(FIN);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // La conexión ya estaba cerrada
+            }
+        }
+
+        /**
+         * Indica si la sesión ya se cerró.
+         *
+         * @return true si la sesión está cerrada.
+         */
+        boolean isCerrada() {
+            return cerrada;
+        }
 
+        /**
+         * Obtiene el puerto remoto de la conexión.
+         *
+         * @return El puerto del cliente.
+         */
+        int getPuerto() {
+            return socket.getPort();
         }
     }
 
-    public static void main(String args[]){
+    /**
+     * Crea un servidor escuchando en el puerto dado, que guarda el historial en "historial.csv", o en
+     * formato binario si la propiedad del sistema "historial.formato" es "binario".
+     *
+     * @param puerto El puerto en el que escuchar, o 0 para uno libre.
+     * @throws IOException si no se puede abrir el puerto o el historial.
+     */
+    public Servidor(int puerto) throws IOException {
+        this(puerto, HistorialBinario.configurado() ? HistorialBinario.desdePropiedades()
+                : EscritorHistorial.desdePropiedades(Paths.get("historial.csv")));
+    }
 
+    /**
+     * Crea un servidor escuchando en el puerto dado.
+     *
+     * @param puerto    El puerto en el que escuchar, o 0 para uno libre.
+     * @param historial El historial; el servidor lo cierra al cerrarse.
+     * @throws IOException si no se puede abrir el puerto.
+     */
+    public Servidor(int puerto, Historial historial) throws IOException {
+        this.server = new ServerSocket(puerto);
+        this.hilos = crearEjecutor();
+        this.historial = historial;
+    }
 
+    /**
+     * Crea el ejecutor que atiende las conexiones: un hilo virtual por conexión si la JVM los
+     * ofrece, o un grupo de hilos de plataforma sin límite que reutiliza los hilos libres en caso
+     * contrario. Cada conexión ocupa un hilo durante toda su vida, así que un grupo acotado dejaría
+     * sin atender a los clientes que llegan cuando todos los hilos están ocupados.
+     *
+     * @return El ejecutor de conexiones.
+     */
+    static ExecutorService crearEjecutor() {
+        try {
+            Method virtuales = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtuales.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
 
+    /**
+     * Reconoce el mensaje con el que un cliente antiguo registra su puerto: un "0" seguido solo de
+     * dígitos que forman un puerto válido. Otros mensajes que empiezan con "0", como {@code 0.5*2},
+     * son mensajes normales.
+     *
+     * @param mensaje El mensaje recibido.
+     * @return El puerto registrado, o -1 si el mensaje no es un registro de puerto.
+     */
+    static int puertoRegistrado(String mensaje) {
+        int longitud = mensaje.length();
+        if (longitud < 2 || longitud > 6 || mensaje.charAt(0) != '0') {
+            return -1;
+        }
+        int puerto = 0;
+        for (int i = 1; i < longitud; i++) {
+            char c = mensaje.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            puerto = puerto * 10 + (c - '0');
+        }
+        return puerto >= 1 && puerto <= 65535 ? puerto : -1;
+    }
 
+    /**
+     * Obtiene el puerto en el que escucha el servidor.
+     *
+     * @return El puerto local.
+     */
+    public int getPuerto() {
+        return server.getLocalPort();
+    }
 
-        LinkedList<Integer> lista_puertos = new LinkedList<Integer>();
+    /**
+     * Servidor va a continuamente esperar una nueva conneccion, para asi habilitar mas clientes siempre.
+     * Cada conexión se entrega al ejecutor y el ciclo vuelve de inmediato a aceptar la siguiente.
+     * Termina cuando se cierra el servidor.
+     */
+    public void escuchar() {
+        while (!server.isClosed()) {
+            try {
+                Socket serversocker = server.accept();
+                hilos.execute(() -> atender(serversocker));
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.out.println(e);
+                }
+            }
+        }
+    }
 
+    /**
+     * Atiende una conexión: la registra como sesión y procesa sus mensajes hasta que el cliente la cierre.
+     *
+     * @param serversocker El socket de la conexión aceptada.
+     */
+    private void atender(Socket serversocker) {
+        Sesion sesion = null;
+        try (Socket socket = serversocker) {
+            socket.setTcpNoDelay(true);
+            sesion = new Sesion(socket);
+            sesiones.add(sesion);
+            hilos.execute(sesion::escribir);
+            if (server.isClosed()) {
+                // El servidor se cerró mientras la conexión esperaba; close() ya no la verá
+                return;
+            }
+            DataInputStream datos = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            while (true) {
+                procesar(sesion, datos.readUTF());
+            }
+        } catch (EOFException e) {
+            // El cliente cerró la conexión
+        } catch (IOException e) {
+            if (!server.isClosed() && (sesion == null || !sesion.isCerrada())) {
+                System.out.println(e);
+            }
+        } finally {
+            if (sesion != null) {
+                sesiones.remove(sesion);
+                sesion.cerrar();
+            }
+        }
+    }
+
+    /**
+     * Procesa un mensaje recibido por una sesión. Las peticiones de evaluación se responden solo a esa sesión.
+     *
+     * @param sesion   La sesión que envió el mensaje.
+     * @param mensajes El mensaje recibido.
+     */
+    private void procesar(Sesion sesion, String mensajes) {
+        RECIBIDOS.incrementar();
+        if (ServicioEvaluacion.esPeticion(mensajes)) {
+            servicio.atender(mensajes, sesion::enviar);
+            return;
+        }
+        /**
+         * Revisa si el mensaje que le acaba de llegar es un puerto codificado, lo descodifica y lo pone
+         * en la lista de puertos.
+         * Ver Cliente.java
+         */
+        int puerto_final = puertoRegistrado(mensajes);
+        if (puerto_final > 0){
+            lista_puertos.add(puerto_final);
+            System.out.println("Conectado: " + puerto_final);
+        }
+        /**
+         * Si el mensaje no es un puerto, es un mensaje normal, entonces lo envía a todas las
+         * sesiones abiertas y a los puertos de cliente registrados.
+         */
+        else if (!mensajes.isEmpty()) {
+            difundir(mensajes);
+            long inicio = System.nanoTime();
+            historial.registrar(mensajes);
+            REGISTRO_HISTORIAL.registrarDesde(inicio);
+        }
+    }
+
+    /**
+     * Envía un mensaje a todas las sesiones abiertas, por su propia conexión, y a los puertos de
+     * cliente registrados por clientes antiguos. Con las sesiones solo se encola el mensaje; una
+     * sesión cerrada o atrasada se elimina, igual que un puerto que falla.
+     *
+     * @param mensajes El mensaje a enviar.
+     */
+    private void difundir(String mensajes) {
+        long inicio = System.nanoTime();
+        for (Sesion sesion : sesiones) {
+            if (sesion.enviar(mensajes)) {
+                DIFUNDIDOS.incrementar();
+            } else {
+                sesiones.remove(sesion);
+            }
+        }
+        for (Integer puerto : lista_puertos) {
+            try (Socket mensajepuertos = new Socket("127.0.0.1", puerto)) {
+                DataOutputStream out = new DataOutputStream(mensajepuertos.getOutputStream());
+                out.writeUTF(mensajes);
+                DIFUNDIDOS.incrementar();
+            } catch (IOException e) {
+                lista_puertos.remove(puerto);
+                System.out.println("Desconectado: " + puerto);
+            }
+        }
+        DIFUSION.registrarDesde(inicio);
+    }
+
+    /**
+     * Obtiene el historial, por ejemplo para consultar sus contadores.
+     *
+     * @return El historial.
+     */
+    public Historial getHistorial() {
+        return historial;
+    }
+
+    /**
+     * Deja de aceptar conexiones, cierra las sesiones abiertas (los hilos bloqueados leyendo de un
+     * socket no responden a una interrupción, solo al cierre del socket), detiene el ejecutor y el
+     * servicio de evaluación y, cuando los hilos terminaron, cierra el historial.
+     *
+     * @throws IOException si ocurre un error al cerrar el socket del servidor o el historial.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Sesion sesion : sesiones) {
+            sesion.cerrar();
+        }
+        hilos.shutdownNow();
+        servicio.close();
         try {
-            ServerSocket server = new ServerSocket(6000);
-
-            while(true){
-
-                /**
-                 * Servidor va a continuamente esperar una nueva conneccion, para asi habilitar mas clientes siempre.
-                 * Guarda el mensaje que se le envio para procesarlo despues.
-                 */
-                Socket serversocker =  server.accept();
-                DataInputStream datos = new DataInputStream(serversocker.getInputStream());
-                String mensajes = datos.readUTF();
-
-                /**
-                 * Revisa si el mensaje que le acaba de llegar es un puerto codificado, lo descodifica y lo pone
-                 * en una lista enlazada.
-                 * Ver Cliente.java
-                 */
-                if (Objects.equals(String.valueOf(mensajes.charAt(0)), "0")){
-                    mensajes = mensajes.substring(1, mensajes.length() );
-                    int puerto_final = Integer.parseInt(mensajes);
-                    lista_puertos.add(puerto_final);
-                    System.out.println("Conectado: " + puerto_final);
-                }
-                /**
-                 * Si el mensaje no es un puerto, es un mensaje normal, entonces itera sobre la lista de
-                 * puertos de cliente, crea un socket para cada puerto, y envia el mensaje al socket.
-                 */
-                else {
-                    Socket mensajepuertos = null;
-
-                    for (int i = 0; i < lista_puertos.size(); i++) {
-                        mensajepuertos = new Socket("127.0.0.1",lista_puertos.get(i));
-                        DataOutputStream out = new DataOutputStream(mensajepuertos.getOutputStream());
-                        out.writeUTF(mensajes);
-                        mensajepuertos.close();
-                    }
-                    System.out.println(mensajes);
-                    writeToCSV(mensajes);
-                }
+            hilos.awaitTermination(ESPERA_CIERRE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        historial.close();
+    }
+
+    /**
+     * Inicia el servidor en el puerto 6000. Con la propiedad de sistema {@code servidor.motor=nio}
+     * se usa {@link ServidorNio}, que atiende todas las conexiones desde un solo hilo. El protocolo por
+     * tramas se atiende en el puerto 6001 (ver {@link ServidorMultiplexado}). Las métricas se publican
+     * por JMX y, con {@code metricas.volcado=segundos}, también se escriben periódicamente en la consola.
+     *
+     * @param args Argumentos de línea de comandos (no se utilizan).
+     */
+    public static void main(String args[]){
+        try {
+            Metricas.iniciarDesdePropiedades();
+            ServidorMultiplexado tramas = new ServidorMultiplexado(Protocolo.PUERTO);
+            Thread hiloTramas = new Thread(tramas::escuchar, "servidor-tramas");
+            hiloTramas.setDaemon(true);
+            hiloTramas.start();
+            if ("nio".equals(System.getProperty("servidor.motor"))) {
+                new ServidorNio(PUERTO).run();
+                return;
             }
+            new Servidor(PUERTO).escuchar();
         } catch (Exception e) {
             System.out.println(e);
         }
@@ -0,0 +1,254 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Esta clase atiende el protocolo binario por tramas ({@link Protocolo}) en su propio puerto.
+ *
+ * Cada conexión tiene un hilo que lee peticiones sin esperar las respuestas; las evaluaciones se
+ * hacen en el {@link ServicioEvaluacion} y cada hilo evaluador encola su respuesta en cuanto termina,
+ * así un cliente puede tener muchas peticiones en vuelo por una sola conexión. Un hilo escritor por
+ * conexión envía las respuestas; si un cliente deja de leerlas y su cola se llena, la conexión se
+ * cierra en lugar de detener a los hilos evaluadores.
+ */
+public class ServidorMultiplexado implements Closeable {
+
+    private final ServerSocket server;
+    private final ExecutorService hilos;
+    private final ServicioEvaluacion servicio;
+    private final Set<Salida> conexiones = ConcurrentHashMap.newKeySet();
+
+    private static final Metricas.Contador ATRASADAS = Metricas.contador("multiplexado.atrasadas");
+
+    /**
+     * Clase interna que representa una respuesta que espera ser escrita.
+     */
+    private static final class Respuesta {
+        final byte tipo;
+        final int id;
+        final byte[] carga;
+
+        /**
+         * Constructor de una respuesta.
+         *
+         * @param tipo  {@link Protocolo#RESULTADO} o {@link Protocolo#ERROR}.
+         * @param id    El identificador de la petición.
+         * @param carga El texto de la respuesta en UTF-8.
+         */
+        Respuesta(byte tipo, int id, byte[] carga) {
+            this.tipo = tipo;
+            this.id = id;
+            this.carga = carga;
+        }
+    }
+
+    /**
+     * Clase interna que representa la salida de una conexión, compartida por los hilos evaluadores.
+     * Las respuestas se encolan sin esperar y un hilo escritor propio las envía.
+     */
+    private static final class Salida {
+        /**
+         * Cantidad máxima de respuestas pendientes de escribir por conexión.
+         */
+        static final int MAX_PENDIENTES = 1024;
+
+        /**
+         * Marca que despierta al escritor para que termine; se compara por identidad.
+         */
+        private static final Respuesta FIN = new Respuesta(Protocolo.ERROR, 0, new byte[0]);
+
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final BlockingQueue<Respuesta> pendientes = new ArrayBlockingQueue<Respuesta>(MAX_PENDIENTES);
+        private volatile boolean cerrada;
+
+        /**
+         * Constructor de la salida de una conexión.
+         *
+         * @param socket El socket de la conexión.
+         * @throws IOException si no se puede obtener el flujo de salida.
+         */
+        Salida(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Encola una respuesta sin esperar. Se puede llamar desde varios hilos a la vez. Si la cola
+         * está llena el cliente se considera atrasado y la conexión se cierra.
+         *
+         * @param exito true si la evaluación terminó bien.
+         * @param id    El identificador de la petición.
+         * @param texto El resultado o la descripción del error.
+         */
+        void responder(boolean exito, int id, String texto) {
+            if (cerrada) {
+                return;
+            }
+            Respuesta respuesta = new Respuesta(exito ? Protocolo.RESULTADO : Protocolo.ERROR, id,
+                    texto.getBytes(StandardCharsets.UTF_8));
+            if (!pendientes.offer(respuesta)) {
+                ATRASADAS.incrementar();
+                cerrar();
+            }
+        }
+
+        /**
+         * Ciclo del hilo escritor: escribe las respuestas encoladas y vacía el búfer cuando la cola
+         * queda vacía, hasta que la conexión se cierre o falle una escritura.
+         */
+        void escribir() {
+            try {
+                while (true) {
+                    Respuesta respuesta = pendientes.take();
+                    if (respuesta == FIN) {
+                        return;
+                    }
+                    Protocolo.escribir(out, respuesta.tipo, respuesta.id, respuesta.carga);
+                    if (pendientes.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // El cliente se desconectó
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                cerrar();
+            }
+        }
+
+        /**
+         * Cierra la conexión: el hilo lector sale de su lectura bloqueada y el escritor termina.
+         */
+        void cerrar() {
+            cerrada = true;
+            pendientes.clear();
+            pendientes.offer(FIN);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // La conexión ya estaba cerrada
+            }
+        }
+    }
+
+    /**
+     * Crea un servidor por tramas en el puerto dado, con su propio servicio de evaluación.
+     *
+     * @param puerto El puerto en el que escuchar, o 0 para uno libre.
+     * @throws IOException si no se puede abrir el puerto.
+     */
+    public ServidorMultiplexado(int puerto) throws IOException {
+        this(puerto, new ServicioEvaluacion());
+    }
+
+    /**
+     * Crea un servidor por tramas en el puerto dado.
+     *
+     * @param puerto   El puerto en el que escuchar, o 0 para uno libre.
+     * @param servicio El servicio que evalúa las peticiones; el servidor lo cierra al cerrarse.
+     * @throws IOException si no se puede abrir el puerto.
+     */
+    public ServidorMultiplexado(int puerto, ServicioEvaluacion servicio) throws IOException {
+        this.server = new ServerSocket(puerto);
+        this.hilos = Servidor.crearEjecutor();
+        this.servicio = servicio;
+    }
+
+    /**
+     * Obtiene el puerto en el que escucha el servidor.
+     *
+     * @return El puerto local.
+     */
+    public int getPuerto() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Acepta conexiones hasta que el servidor se cierre y atiende cada una en su propio hilo.
+     */
+    public void escuchar() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                hilos.execute(() -> atender(socket));
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.out.println(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lee las peticiones de una conexión hasta que el cliente la cierre.
+     *
+     * @param conexion El socket de la conexión aceptada.
+     */
+    private void atender(Socket conexion) {
+        Salida salida = null;
+        try (Socket socket = conexion) {
+            socket.setTcpNoDelay(true);
+            salida = new Salida(socket);
+            conexiones.add(salida);
+            hilos.execute(salida::escribir);
+            if (server.isClosed()) {
+                // El servidor se cerró mientras la conexión esperaba; close() ya no la verá
+                return;
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Salida respuestas = salida;
+            while (true) {
+                Protocolo.Trama trama = Protocolo.leer(in);
+                int id = trama.id;
+                if (trama.tipo != Protocolo.EVALUAR || trama.carga.length == 0
+                        || trama.carga[0] < 0 || trama.carga[0] >= Protocolo.MODOS.length) {
+                    respuestas.responder(false, id, "Petición inválida");
+                    continue;
+                }
+                servicio.atender(Protocolo.MODOS[trama.carga[0]], trama.texto(1),
+                        (exito, texto) -> respuestas.responder(exito, id, texto));
+            }
+        } catch (EOFException e) {
+            // El cliente cerró la conexión
+        } catch (IOException e) {
+            if (!server.isClosed() && (salida == null || !salida.cerrada)) {
+                System.out.println(e);
+            }
+        } finally {
+            if (salida != null) {
+                conexiones.remove(salida);
+                salida.cerrar();
+            }
+        }
+    }
+
+    /**
+     * Deja de aceptar conexiones, cierra las conexiones abiertas para que sus hilos terminen y detiene
+     * los hilos y el servicio de evaluación.
+     *
+     * @throws IOException si ocurre un error al cerrar el socket del servidor.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Salida salida : conexiones) {
+            salida.cerrar();
+        }
+        hilos.shutdownNow();
+        servicio.close();
+    }
+}
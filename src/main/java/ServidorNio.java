@@ -0,0 +1,562 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Esta clase representa una alternativa a {@link Servidor} que atiende todas las conexiones desde un
+ * solo hilo, con un {@link Selector} de java.nio y canales no bloqueantes.
+ * Los mensajes usan el mismo formato que {@code DataOutputStream.writeUTF}: dos bytes con la longitud
+ * seguidos del texto en UTF-8 modificado, así los clientes existentes no necesitan cambios.
+ * Conserva la semántica de {@link Servidor}: un mensaje formado por "0" y un número de puerto
+ * registra el puerto de un cliente antiguo, una petición {@code EVAL|id|modo|expresion} se evalúa en el
+ * {@link ServicioEvaluacion} y se responde solo a quien la envió, y cualquier otro mensaje se difunde a
+ * todas las conexiones abiertas y a los puertos registrados, y se guarda en el historial.
+ * Las respuestas se calculan en los hilos del servicio y vuelven al ciclo de eventos por una cola; el
+ * selector se despierta para encolarlas en la conexión que hizo la petición.
+ *
+ * La memoria por conexión es pequeña y fija: la lectura usa un único búfer directo compartido, y cada
+ * mensaje difundido se codifica una sola vez en un búfer del heap, que se comparte entre todas las
+ * conexiones y se libera como cualquier objeto cuando todas lo escribieron.
+ */
+public class ServidorNio implements Closeable, Runnable {
+
+    /**
+     * Tamaño del búfer directo compartido para las lecturas.
+     */
+    static final int TAMANO_LECTURA = 64 * 1024;
+
+    /**
+     * Cantidad máxima de mensajes pendientes de escribir por conexión. Una conexión que se atrasa
+     * más que esto se cierra, para que un cliente lento no acumule memoria en el servidor.
+     */
+    static final int MAX_PENDIENTES = 1024;
+
+    private static final Metricas.Contador RECIBIDOS = Metricas.contador("servidor.recibidos");
+    private static final Metricas.Contador DIFUNDIDOS = Metricas.contador("servidor.difundidos");
+    private static final Metricas.Histograma DIFUSION = Metricas.histograma("servidor.difusion");
+    private static final Metricas.Histograma REGISTRO_HISTORIAL = Metricas.histograma("servidor.historial");
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ByteBuffer lectura = ByteBuffer.allocateDirect(TAMANO_LECTURA);
+    private final List<Integer> lista_puertos = new ArrayList<Integer>();
+    private final Historial historial;
+    private final ServicioEvaluacion servicio = new ServicioEvaluacion();
+    private final Queue<Respuesta> respuestas = new ConcurrentLinkedQueue<Respuesta>();
+    private volatile boolean activo = true;
+
+    /**
+     * Clase interna con el estado de una conexión: los bytes de un mensaje incompleto y los mensajes
+     * que todavía no se pudieron escribir.
+     */
+    static class Conexion {
+        private final SocketChannel canal;
+        private ByteBuffer parcial;
+        private final ArrayDeque<ByteBuffer> pendientes = new ArrayDeque<ByteBuffer>();
+        private boolean saliente;
+
+        /**
+         * Constructor de una conexión.
+         *
+         * @param canal El canal de la conexión.
+         */
+        Conexion(SocketChannel canal) {
+            this.canal = canal;
+        }
+    }
+
+    /**
+     * Clase interna que representa el envío de un mensaje a un puerto registrado por un cliente antiguo:
+     * se abre una conexión, se escribe el mensaje y se cierra.
+     */
+    static class Saliente {
+        private final int puerto;
+        private final ByteBuffer mensaje;
+
+        /**
+         * Constructor de un envío saliente.
+         *
+         * @param puerto  El puerto del cliente.
+         * @param mensaje El mensaje ya codificado.
+         */
+        Saliente(int puerto, ByteBuffer mensaje) {
+            this.puerto = puerto;
+            this.mensaje = mensaje;
+        }
+    }
+
+    /**
+     * Clase interna que representa la respuesta a una petición de evaluación, ya codificada, que
+     * espera a que el ciclo de eventos la encole en la conexión que hizo la petición.
+     */
+    static class Respuesta {
+        private final SelectionKey llave;
+        private final ByteBuffer mensaje;
+
+        /**
+         * Constructor de una respuesta.
+         *
+         * @param llave   La llave de la conexión que hizo la petición.
+         * @param mensaje La respuesta codificada.
+         */
+        Respuesta(SelectionKey llave, ByteBuffer mensaje) {
+            this.llave = llave;
+            this.mensaje = mensaje;
+        }
+    }
+
+    /**
+     * Crea un servidor escuchando en el puerto dado, que guarda el historial en "historial.csv" con la
+     * misma configuración que {@link Servidor} ({@link EscritorHistorial#desdePropiedades(Path, long)}),
+     * salvo que por omisión el historial no espera cuando su cola está llena, para no detener el ciclo
+     * de eventos. Si la propiedad del sistema "historial.formato" es "binario" se usa el historial binario.
+     *
+     * @param puerto El puerto en el que escuchar, o 0 para uno libre.
+     * @throws IOException si no se puede abrir el puerto o el historial.
+     */
+    public ServidorNio(int puerto) throws IOException {
+        this(puerto, HistorialBinario.configurado() ? HistorialBinario.desdePropiedades()
+                : EscritorHistorial.desdePropiedades(Paths.get("historial.csv"), 0));
+    }
+
+    /**
+     * Crea un servidor escuchando en el puerto dado.
+     *
+     * @param puerto    El puerto en el que escuchar, o 0 para uno libre.
+     * @param historial El historial; el servidor lo cierra al terminar.
+     * @throws IOException si no se puede abrir el puerto.
+     */
+    public ServidorNio(int puerto, Historial historial) throws IOException {
+        this.historial = historial;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(puerto), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Obtiene el puerto en el que escucha el servidor.
+     *
+     * @return El puerto local.
+     */
+    public int getPuerto() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Ciclo de eventos: espera a que algún canal esté listo y lo atiende, hasta que se cierre el servidor.
+     */
+    @Override
+    public void run() {
+        try {
+            while (activo) {
+                selector.select();
+                entregarRespuestas();
+                Iterator<SelectionKey> listas = selector.selectedKeys().iterator();
+                while (listas.hasNext()) {
+                    SelectionKey llave = listas.next();
+                    listas.remove();
+                    try {
+                        if (!llave.isValid()) {
+                            continue;
+                        }
+                        if (llave.isAcceptable()) {
+                            aceptar();
+                        } else if (llave.isConnectable()) {
+                            conectar(llave);
+                        } else {
+                            if (llave.isReadable()) {
+                                leer(llave);
+                            }
+                            if (llave.isValid() && llave.isWritable()) {
+                                escribir(llave);
+                            }
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // Solo se cierra la conexión que falló; las demás siguen atendidas
+                        cerrar(llave);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (activo) {
+                System.out.println(e);
+            }
+        } finally {
+            for (SelectionKey llave : selector.keys()) {
+                cerrar(llave);
+            }
+            servicio.close();
+            try {
+                selector.close();
+                historial.close();
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+        }
+    }
+
+    /**
+     * Acepta todas las conexiones pendientes y las registra para lectura.
+     *
+     * @throws IOException si ocurre un error al aceptar.
+     */
+    private void aceptar() throws IOException {
+        SocketChannel canal;
+        while ((canal = server.accept()) != null) {
+            canal.configureBlocking(false);
+            canal.socket().setTcpNoDelay(true);
+            canal.register(selector, SelectionKey.OP_READ, new Conexion(canal));
+        }
+    }
+
+    /**
+     * Lee los datos disponibles de una conexión y procesa cada mensaje completo.
+     *
+     * @param llave La llave de la conexión.
+     * @throws IOException si ocurre un error de lectura o el cliente cerró la conexión.
+     */
+    private void leer(SelectionKey llave) throws IOException {
+        Conexion conexion = (Conexion) llave.attachment();
+        lectura.clear();
+        int leidos = conexion.canal.read(lectura);
+        if (leidos < 0) {
+            throw new IOException("Conexión cerrada");
+        }
+        lectura.flip();
+        ByteBuffer datos = lectura;
+        if (conexion.parcial != null) {
+            datos = agregar(conexion.parcial, lectura);
+            datos.flip();
+            conexion.parcial = null;
+        }
+        while (datos.remaining() >= 2) {
+            int longitud = ((datos.get(datos.position()) & 0xFF) << 8) | (datos.get(datos.position() + 1) & 0xFF);
+            if (datos.remaining() < 2 + longitud) {
+                break;
+            }
+            datos.position(datos.position() + 2);
+            procesar(llave, decodificar(datos, longitud));
+        }
+        if (datos.hasRemaining()) {
+            ByteBuffer parcial = ByteBuffer.allocate(Math.max(256, datos.remaining() * 2));
+            parcial.put(datos);
+            conexion.parcial = parcial;
+        }
+    }
+
+    /**
+     * Copia los bytes de {@code datos} al final de {@code destino}, agrandándolo si hace falta.
+     *
+     * @param destino El búfer de destino, en modo escritura.
+     * @param datos   Los bytes a agregar.
+     * @return El búfer con los bytes agregados, en modo escritura.
+     */
+    private static ByteBuffer agregar(ByteBuffer destino, ByteBuffer datos) {
+        if (destino.remaining() < datos.remaining()) {
+            ByteBuffer mayor = ByteBuffer.allocate((destino.position() + datos.remaining()) * 2);
+            destino.flip();
+            mayor.put(destino);
+            destino = mayor;
+        }
+        destino.put(datos);
+        return destino;
+    }
+
+    /**
+     * Procesa un mensaje recibido, con la misma semántica que {@link Servidor}.
+     *
+     * @param llave    La llave de la conexión que envió el mensaje.
+     * @param mensajes El mensaje recibido.
+     */
+    private void procesar(SelectionKey llave, String mensajes) {
+        RECIBIDOS.incrementar();
+        if (ServicioEvaluacion.esPeticion(mensajes)) {
+            servicio.atender(mensajes, respuesta -> responder(llave, respuesta));
+            return;
+        }
+        int puerto_final = Servidor.puertoRegistrado(mensajes);
+        if (puerto_final > 0) {
+            lista_puertos.add(puerto_final);
+            System.out.println("Conectado: " + puerto_final);
+        } else if (!mensajes.isEmpty()) {
+            difundir(mensajes);
+            long inicio = System.nanoTime();
+            historial.registrar(mensajes);
+            REGISTRO_HISTORIAL.registrarDesde(inicio);
+        }
+    }
+
+    /**
+     * Entrega la respuesta a una petición desde un hilo del servicio de evaluación: la codifica, la
+     * deja en la cola de respuestas y despierta al selector para que la encole en la conexión.
+     *
+     * @param llave     La llave de la conexión que hizo la petición.
+     * @param respuesta La respuesta.
+     */
+    private void responder(SelectionKey llave, String respuesta) {
+        try {
+            respuestas.add(new Respuesta(llave, codificar(respuesta)));
+        } catch (UTFDataFormatException e) {
+            System.out.println(e);
+            return;
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * Encola las respuestas listas en sus conexiones. Se ejecuta en el hilo del ciclo de eventos; las
+     * respuestas de conexiones que ya se cerraron se descartan.
+     */
+    private void entregarRespuestas() {
+        Respuesta respuesta;
+        while ((respuesta = respuestas.poll()) != null) {
+            if (respuesta.llave.isValid()) {
+                encolar(respuesta.llave, respuesta.mensaje);
+            }
+        }
+    }
+
+    /**
+     * Encola un mensaje en una conexión y pide avisar cuando se pueda escribir. Una conexión con
+     * demasiados mensajes pendientes se cierra.
+     *
+     * @param llave   La llave de la conexión.
+     * @param mensaje El mensaje codificado.
+     * @return true si el mensaje se encoló, false si la conexión se cerró por atrasarse.
+     */
+    private static boolean encolar(SelectionKey llave, ByteBuffer mensaje) {
+        Conexion conexion = (Conexion) llave.attachment();
+        if (conexion.pendientes.size() >= MAX_PENDIENTES) {
+            cerrar(llave);
+            return false;
+        }
+        conexion.pendientes.add(mensaje);
+        llave.interestOps(llave.interestOps() | SelectionKey.OP_WRITE);
+        return true;
+    }
+
+    /**
+     * Codifica un mensaje una sola vez y lo encola en todas las conexiones abiertas y en los puertos
+     * registrados.
+     *
+     * @param mensajes El mensaje a difundir.
+     */
+    private void difundir(String mensajes) {
+        long inicio = System.nanoTime();
+        ByteBuffer codificado;
+        try {
+            codificado = codificar(mensajes);
+        } catch (UTFDataFormatException e) {
+            System.out.println(e);
+            return;
+        }
+        for (SelectionKey llave : selector.keys()) {
+            if (llave.isValid() && llave.attachment() instanceof Conexion && !((Conexion) llave.attachment()).saliente
+                    && encolar(llave, codificado.duplicate())) {
+                DIFUNDIDOS.incrementar();
+            }
+        }
+        List<Integer> fallidos = null;
+        for (Integer puerto : lista_puertos) {
+            SocketChannel canal = null;
+            try {
+                canal = SocketChannel.open();
+                canal.configureBlocking(false);
+                canal.connect(new InetSocketAddress("127.0.0.1", puerto));
+                canal.register(selector, SelectionKey.OP_CONNECT, new Saliente(puerto, codificado.duplicate()));
+                DIFUNDIDOS.incrementar();
+            } catch (IOException e) {
+                cerrar(canal);
+                if (fallidos == null) {
+                    fallidos = new ArrayList<Integer>();
+                }
+                fallidos.add(puerto);
+            }
+        }
+        if (fallidos != null) {
+            // Se eliminan después del ciclo para no modificar la lista mientras se recorre
+            lista_puertos.removeAll(fallidos);
+            for (Integer puerto : fallidos) {
+                System.out.println("Desconectado: " + puerto);
+            }
+        }
+        DIFUSION.registrarDesde(inicio);
+    }
+
+    /**
+     * Termina la conexión con un puerto registrado y prepara el envío del mensaje.
+     *
+     * @param llave La llave del canal saliente.
+     */
+    private void conectar(SelectionKey llave) {
+        Saliente saliente = (Saliente) llave.attachment();
+        SocketChannel canal = (SocketChannel) llave.channel();
+        try {
+            canal.finishConnect();
+            Conexion conexion = new Conexion(canal);
+            conexion.pendientes.add(saliente.mensaje);
+            // Al terminar de escribir, la conexión saliente se cierra (ver escribir)
+            conexion.saliente = true;
+            llave.attach(conexion);
+            llave.interestOps(SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            lista_puertos.remove(Integer.valueOf(saliente.puerto));
+            System.out.println("Desconectado: " + saliente.puerto);
+            cerrar(llave);
+        }
+    }
+
+    /**
+     * Escribe los mensajes pendientes de una conexión hasta vaciar la cola o llenar el búfer del sistema.
+     *
+     * @param llave La llave de la conexión.
+     * @throws IOException si ocurre un error de escritura.
+     */
+    private void escribir(SelectionKey llave) throws IOException {
+        Conexion conexion = (Conexion) llave.attachment();
+        ByteBuffer mensaje;
+        while ((mensaje = conexion.pendientes.peek()) != null) {
+            conexion.canal.write(mensaje);
+            if (mensaje.hasRemaining()) {
+                return;
+            }
+            conexion.pendientes.poll();
+        }
+        if (conexion.saliente) {
+            cerrar(llave);
+        } else {
+            llave.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Cierra el canal de una llave y la cancela.
+     *
+     * @param llave La llave a cerrar.
+     */
+    private static void cerrar(SelectionKey llave) {
+        llave.cancel();
+        try {
+            llave.channel().close();
+        } catch (IOException e) {
+            // El canal ya estaba cerrado
+        }
+    }
+
+    /**
+     * Cierra un canal saliente que no llegó a registrarse.
+     *
+     * @param canal El canal, o null si no se pudo abrir.
+     */
+    private static void cerrar(SocketChannel canal) {
+        if (canal == null) {
+            return;
+        }
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // El canal ya estaba cerrado
+        }
+    }
+
+    /**
+     * Codifica un texto como lo hace {@code DataOutputStream.writeUTF}: longitud de dos bytes y
+     * UTF-8 modificado.
+     *
+     * @param texto El texto a codificar.
+     * @return Un búfer de solo lectura con el mensaje, listo para escribirse.
+     * @throws UTFDataFormatException si el texto codificado supera 65535 bytes.
+     */
+    static ByteBuffer codificar(String texto) throws UTFDataFormatException {
+        int longitud = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            longitud += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF ? 2 : 3);
+        }
+        if (longitud > 65535) {
+            throw new UTFDataFormatException("Mensaje demasiado largo: " + longitud + " bytes");
+        }
+        // Un arreglo del heap: un búfer directo por mensaje solo se libera cuando corre el recolector
+        byte[] bytes = new byte[2 + longitud];
+        int n = 0;
+        bytes[n++] = (byte) (longitud >>> 8);
+        bytes[n++] = (byte) longitud;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                bytes[n++] = (byte) c;
+            } else if (c <= 0x07FF) {
+                bytes[n++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+                bytes[n++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[n++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+                bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Decodifica un texto en UTF-8 modificado, como lo hace {@code DataInputStream.readUTF}.
+     *
+     * @param buffer   El búfer, posicionado al inicio del texto; avanza sobre los bytes leídos.
+     * @param longitud La cantidad de bytes del texto.
+     * @return El texto decodificado.
+     * @throws UTFDataFormatException si los bytes no son UTF-8 modificado válido.
+     */
+    static String decodificar(ByteBuffer buffer, int longitud) throws UTFDataFormatException {
+        char[] caracteres = new char[longitud];
+        int cantidad = 0;
+        int fin = buffer.position() + longitud;
+        while (buffer.position() < fin) {
+            int a = buffer.get() & 0xFF;
+            if (a < 0x80) {
+                caracteres[cantidad++] = (char) a;
+            } else if ((a & 0xE0) == 0xC0 && buffer.position() < fin) {
+                int b = buffer.get() & 0xFF;
+                caracteres[cantidad++] = (char) (((a & 0x1F) << 6) | (b & 0x3F));
+            } else if ((a & 0xF0) == 0xE0 && buffer.position() + 1 < fin) {
+                int b = buffer.get() & 0xFF;
+                int c = buffer.get() & 0xFF;
+                caracteres[cantidad++] = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+            } else {
+                throw new UTFDataFormatException("Byte inválido en el mensaje: " + a);
+            }
+        }
+        return new String(caracteres, 0, cantidad);
+    }
+
+    /**
+     * Detiene el ciclo de eventos. Las conexiones se cierran desde el propio hilo del ciclo al salir.
+     */
+    @Override
+    public void close() {
+        activo = false;
+        selector.wakeup();
+    }
+
+    public static void main(String args[]) {
+        try {
+            new ServidorNio(Servidor.PUERTO).run();
+        } catch (Exception e) {
+            System.out.println(e);
+        }
+    }
+}
@@ -1,5 +1,8 @@
+import java.util.Arrays;
+
 /**
- * Esta clase representa una pila implementada utilizando una lista enlazada.
+ * Esta clase representa una pila implementada utilizando una lista enlazada, junto con
+ * variantes respaldadas por arreglos para los recorridos más frecuentes de los árboles.
  */
 public class Stacks {
     /**
@@ -50,4 +53,253 @@ public class Stacks {
             return this.stackList.isEmpty();
         }
     }
+
+    /**
+     * Clase interna que representa una pila genérica respaldada por un arreglo que crece según se necesita.
+     * A diferencia de {@link Stack_LinkedList}, no crea un nodo por cada elemento ni obliga a convertir los tipos.
+     *
+     * @param <T> El tipo de los elementos de la pila.
+     */
+    static class ArrayStack<T> {
+        private Object[] elements;
+        private int size;
+
+        /**
+         * Constructor de una pila con capacidad inicial por defecto.
+         */
+        public ArrayStack() {
+            this(16);
+        }
+
+        /**
+         * Constructor de una pila con una capacidad inicial dada.
+         *
+         * @param capacity La capacidad inicial.
+         */
+        public ArrayStack(int capacity) {
+            this.elements = new Object[Math.max(1, capacity)];
+        }
+
+        /**
+         * Agrega un nuevo elemento a la pila.
+         *
+         * @param newElement El elemento a agregar a la pila.
+         */
+        public void push(T newElement) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = newElement;
+        }
+
+        /**
+         * Elimina y devuelve el elemento superior de la pila.
+         *
+         * @return El elemento superior de la pila o null si la pila está vacía.
+         */
+        @SuppressWarnings("unchecked")
+        public T pop() {
+            if (size == 0) {
+                return null;
+            }
+            T element = (T) elements[--size];
+            elements[size] = null;
+            return element;
+        }
+
+        /**
+         * Obtiene el elemento superior de la pila sin eliminarlo.
+         *
+         * @return El elemento superior de la pila o null si la pila está vacía.
+         */
+        @SuppressWarnings("unchecked")
+        public T peek() {
+            return size == 0 ? null : (T) elements[size - 1];
+        }
+
+        /**
+         * Verifica si la pila está vacía.
+         *
+         * @return true si la pila está vacía, false en caso contrario.
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Obtiene la cantidad de elementos de la pila.
+         *
+         * @return La cantidad de elementos.
+         */
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Clase interna que representa una pila de enteros primitivos respaldada por un arreglo.
+     */
+    static class IntStack {
+        private int[] elements;
+        private int size;
+
+        /**
+         * Constructor de una pila con capacidad inicial por defecto.
+         */
+        public IntStack() {
+            this(16);
+        }
+
+        /**
+         * Constructor de una pila con una capacidad inicial dada.
+         *
+         * @param capacity La capacidad inicial.
+         */
+        public IntStack(int capacity) {
+            this.elements = new int[Math.max(1, capacity)];
+        }
+
+        /**
+         * Agrega un nuevo elemento a la pila.
+         *
+         * @param newElement El elemento a agregar a la pila.
+         */
+        public void push(int newElement) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = newElement;
+        }
+
+        /**
+         * Elimina y devuelve el elemento superior de la pila.
+         *
+         * @return El elemento superior de la pila.
+         * @throws IllegalStateException si la pila está vacía.
+         */
+        public int pop() {
+            if (size == 0) {
+                throw new IllegalStateException("La pila está vacía");
+            }
+            return elements[--size];
+        }
+
+        /**
+         * Obtiene el elemento superior de la pila sin eliminarlo.
+         *
+         * @return El elemento superior de la pila.
+         * @throws IllegalStateException si la pila está vacía.
+         */
+        public int peek() {
+            if (size == 0) {
+                throw new IllegalStateException("La pila está vacía");
+            }
+            return elements[size - 1];
+        }
+
+        /**
+         * Verifica si la pila está vacía.
+         *
+         * @return true si la pila está vacía, false en caso contrario.
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Obtiene la cantidad de elementos de la pila.
+         *
+         * @return La cantidad de elementos.
+         */
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Clase interna que representa una pila de números {@code double} primitivos respaldada por un arreglo.
+     */
+    static class DoubleStack {
+        private double[] elements;
+        private int size;
+
+        /**
+         * Constructor de una pila con capacidad inicial por defecto.
+         */
+        public DoubleStack() {
+            this(16);
+        }
+
+        /**
+         * Constructor de una pila con una capacidad inicial dada.
+         *
+         * @param capacity La capacidad inicial.
+         */
+        public DoubleStack(int capacity) {
+            this.elements = new double[Math.max(1, capacity)];
+        }
+
+        /**
+         * Agrega un nuevo elemento a la pila.
+         *
+         * @param newElement El elemento a agregar a la pila.
+         */
+        public void push(double newElement) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = newElement;
+        }
+
+        /**
+         * Elimina y devuelve el elemento superior de la pila.
+         *
+         * @return El elemento superior de la pila.
+         * @throws IllegalStateException si la pila está vacía.
+         */
+        public double pop() {
+            if (size == 0) {
+                throw new IllegalStateException("La pila está vacía");
+            }
+            return elements[--size];
+        }
+
+        /**
+         * Obtiene el elemento superior de la pila sin eliminarlo.
+         *
+         * @return El elemento superior de la pila.
+         * @throws IllegalStateException si la pila está vacía.
+         */
+        public double peek() {
+            if (size == 0) {
+                throw new IllegalStateException("La pila está vacía");
+            }
+            return elements[size - 1];
+        }
+
+        /**
+         * Verifica si la pila está vacía.
+         *
+         * @return true si la pila está vacía, false en caso contrario.
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Obtiene la cantidad de elementos de la pila.
+         *
+         * @return La cantidad de elementos.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Vacía la pila conservando el arreglo para reutilizarlo.
+         */
+        public void clear() {
+            size = 0;
+        }
+    }
 }
@@ -0,0 +1,351 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Esta clase evalúa una expresión lógica en todas las asignaciones de sus variables a la vez.
+ *
+ * Cada hoja que no es {@code true} ni {@code false} es una variable. Con N variables hay 2^N filas,
+ * y cada fila es un bit: la columna de una variable es un patrón de bits en un {@code long[]} y los
+ * operadores {@code &}, {@code |}, {@code ^} y {@code ~} se aplican palabra por palabra, así cada
+ * instrucción evalúa 64 filas. La expresión se traduce a un programa postfix plano que se ejecuta por
+ * bloques de palabras para que los registros quepan en la caché. La variable de la posición 0 es el
+ * bit más significativo del número de fila, como en una tabla de verdad escrita a mano.
+ * Las instancias son inmutables.
+ */
+public final class TablaVerdad {
+    /** Apila una columna de unos. */
+    static final byte VERDADERO = 0;
+    /** Apila una columna de ceros. */
+    static final byte FALSO = 1;
+    /** Apila la columna de una variable; el byte siguiente indica su posición. */
+    static final byte VARIABLE = 2;
+    /** Conjunción de las dos columnas superiores. */
+    static final byte Y = 3;
+    /** Disyunción de las dos columnas superiores. */
+    static final byte O = 4;
+    /** Disyunción exclusiva de las dos columnas superiores. */
+    static final byte O_EXCLUSIVO = 5;
+    /** Negación de la columna superior. */
+    static final byte NO = 6;
+
+    /**
+     * Cantidad máxima de variables; con 30 variables la tabla ocupa 128 MiB.
+     */
+    static final int MAX_VARIABLES = 30;
+
+    /**
+     * Cantidad de palabras de cada columna que se evalúan juntas.
+     */
+    static final int BLOQUE = 64;
+
+    /**
+     * Patrones de las seis variables que cambian dentro de una palabra: en el patrón {@code p}, el bit
+     * {@code b} vale 1 si el bit {@code p} de {@code b} vale 1.
+     */
+    private static final long[] PATRONES = {
+            0xAAAAAAAAAAAAAAAAL, 0xCCCCCCCCCCCCCCCCL, 0xF0F0F0F0F0F0F0F0L,
+            0xFF00FF00FF00FF00L, 0xFFFF0000FFFF0000L, 0xFFFFFFFF00000000L
+    };
+
+    private final byte[] codigo;
+    private final String[] variables;
+    private final int maxPila;
+
+    /**
+     * Constructor de una tabla compilada.
+     *
+     * @param codigo    Los códigos de operación.
+     * @param variables Los nombres de las variables, en el orden de sus posiciones.
+     * @param maxPila   La profundidad máxima que alcanza la pila de columnas.
+     */
+    private TablaVerdad(byte[] codigo, String[] variables, int maxPila) {
+        this.codigo = codigo;
+        this.variables = variables;
+        this.maxPila = maxPila;
+    }
+
+    /**
+     * Clase interna que acumula los códigos mientras se recorre el árbol.
+     */
+    private static final class Constructor {
+        private byte[] codigo = new byte[16];
+        private final Map<String, Integer> variables = new LinkedHashMap<>();
+        private int longitud;
+        private int profundidad;
+        private int maxProfundidad;
+
+        /**
+         * Agrega un código de operación y actualiza la profundidad de la pila.
+         *
+         * @param op    El código de operación.
+         * @param delta El cambio en la profundidad de la pila que produce la operación.
+         */
+        void emitir(byte op, int delta) {
+            if (longitud == codigo.length) {
+                codigo = Arrays.copyOf(codigo, longitud * 2);
+            }
+            codigo[longitud++] = op;
+            profundidad += delta;
+            maxProfundidad = Math.max(maxProfundidad, profundidad);
+        }
+
+        /**
+         * Agrega la carga de una variable, asignándole una posición la primera vez que aparece.
+         *
+         * @param nombre El nombre de la variable.
+         */
+        void variable(String nombre) {
+            Integer posicion = variables.get(nombre);
+            if (posicion == null) {
+                if (variables.size() == MAX_VARIABLES) {
+                    throw new IllegalArgumentException("La expresión tiene más de " + MAX_VARIABLES + " variables");
+                }
+                posicion = variables.size();
+                variables.put(nombre, posicion);
+            }
+            emitir(VARIABLE, 1);
+            emitir((byte) (int) posicion, 0);
+        }
+    }
+
+    /**
+     * Compila una expresión lógica infix.
+     *
+     * @param infix La expresión, con los tokens separados por espacios.
+     * @return La tabla compilada.
+     * @throws IllegalArgumentException si la expresión tiene demasiadas variables.
+     */
+    public static TablaVerdad compilar(String infix) {
+        return compilar(LogicTree.postfixToTree(LogicTree.infixToPostfix(infix)));
+    }
+
+    /**
+     * Compila un árbol de expresiones lógicas.
+     *
+     * @param arbol El árbol a compilar.
+     * @return La tabla compilada.
+     * @throws IllegalArgumentException si la expresión tiene demasiadas variables.
+     */
+    public static TablaVerdad compilar(LogicTree.TreeNode arbol) {
+        Constructor constructor = new Constructor();
+        traducir(arbol, constructor);
+        return new TablaVerdad(Arrays.copyOf(constructor.codigo, constructor.longitud),
+                constructor.variables.keySet().toArray(new String[0]), Math.max(1, constructor.maxProfundidad));
+    }
+
+    /**
+     * Traduce un árbol a códigos en postfix, con la misma semántica que {@link LogicTree#evaluate}:
+     * un árbol vacío vale falso y un operador desconocido vale verdadero. El árbol se recorre con
+     * pilas explícitas, así la profundidad de la expresión no está limitada por la pila de la JVM.
+     *
+     * @param arbol       El árbol a traducir.
+     * @param constructor Donde se acumulan los códigos.
+     */
+    private static void traducir(LogicTree.TreeNode arbol, Constructor constructor) {
+        Stacks.ArrayStack<LogicTree.TreeNode> nodos = new Stacks.ArrayStack<>();
+        Stacks.IntStack estados = new Stacks.IntStack();
+        nodos.push(arbol);
+        estados.push(0);
+        while (!nodos.isEmpty()) {
+            LogicTree.TreeNode nodo = nodos.peek();
+            int estado = estados.pop();
+            if (nodo == null) {
+                nodos.pop();
+                constructor.emitir(FALSO, 1);
+                continue;
+            }
+            String dato = nodo.getElement();
+            if (nodo.getLeft() == null && nodo.getRight() == null) {
+                nodos.pop();
+                if (dato.equalsIgnoreCase("true")) {
+                    constructor.emitir(VERDADERO, 1);
+                } else if (dato.equalsIgnoreCase("false")) {
+                    constructor.emitir(FALSO, 1);
+                } else {
+                    constructor.variable(dato);
+                }
+                continue;
+            }
+            byte op;
+            switch (dato) {
+                case "~":
+                    op = NO;
+                    break;
+                case "&":
+                    op = Y;
+                    break;
+                case "|":
+                    op = O;
+                    break;
+                case "^":
+                    op = O_EXCLUSIVO;
+                    break;
+                default:
+                    nodos.pop();
+                    constructor.emitir(VERDADERO, 1);
+                    continue;
+            }
+            // Estado 0: falta el hijo izquierdo; estado 1: falta el derecho; estado 2: se emite el operador.
+            // La negación solo tiene hijo derecho.
+            if (estado == 0 && op == NO) {
+                estado = 1;
+            }
+            if (estado < 2) {
+                estados.push(estado + 1);
+                nodos.push(estado == 0 ? nodo.getLeft() : nodo.getRight());
+                estados.push(0);
+            } else {
+                nodos.pop();
+                constructor.emitir(op, op == NO ? 0 : -1);
+            }
+        }
+    }
+
+    /**
+     * Obtiene los nombres de las variables, en el orden de sus posiciones.
+     *
+     * @return Una copia de los nombres.
+     */
+    public String[] getVariables() {
+        return variables.clone();
+    }
+
+    /**
+     * Obtiene la cantidad de filas de la tabla, 2^N.
+     *
+     * @return La cantidad de filas.
+     */
+    public long getFilas() {
+        return 1L << variables.length;
+    }
+
+    /**
+     * Evalúa la expresión en todas las filas.
+     *
+     * @return Los resultados: la fila {@code r} es el bit {@code r % 64} de la palabra {@code r / 64}.
+     *         Los bits que sobran de la última palabra valen 0.
+     */
+    public long[] evaluar() {
+        int palabras = (int) Math.max(1, getFilas() >>> 6);
+        long[] resultado = new long[palabras];
+        long[][] pila = new long[maxPila][BLOQUE];
+        for (int inicio = 0; inicio < palabras; inicio += BLOQUE) {
+            int cantidad = Math.min(BLOQUE, palabras - inicio);
+            ejecutar(pila, inicio, cantidad);
+            System.arraycopy(pila[0], 0, resultado, inicio, cantidad);
+        }
+        if (getFilas() < 64) {
+            resultado[0] &= (1L << getFilas()) - 1;
+        }
+        return resultado;
+    }
+
+    /**
+     * Ejecuta el programa en un bloque de palabras; el resultado queda en la base de la pila.
+     *
+     * @param pila     Los registros de la pila, de {@link #BLOQUE} palabras cada uno.
+     * @param inicio   La primera palabra del bloque.
+     * @param cantidad La cantidad de palabras del bloque.
+     */
+    private void ejecutar(long[][] pila, int inicio, int cantidad) {
+        int tope = -1;
+        int pc = 0;
+        while (pc < codigo.length) {
+            byte op = codigo[pc++];
+            switch (op) {
+                case VERDADERO:
+                    Arrays.fill(pila[++tope], 0, cantidad, -1L);
+                    break;
+                case FALSO:
+                    Arrays.fill(pila[++tope], 0, cantidad, 0L);
+                    break;
+                case VARIABLE:
+                    columna(codigo[pc++] & 0xFF, pila[++tope], inicio, cantidad);
+                    break;
+                case NO: {
+                    long[] a = pila[tope];
+                    for (int i = 0; i < cantidad; i++) {
+                        a[i] = ~a[i];
+                    }
+                    break;
+                }
+                default: {
+                    long[] b = pila[tope--];
+                    long[] a = pila[tope];
+                    if (op == Y) {
+                        for (int i = 0; i < cantidad; i++) {
+                            a[i] &= b[i];
+                        }
+                    } else if (op == O) {
+                        for (int i = 0; i < cantidad; i++) {
+                            a[i] |= b[i];
+                        }
+                    } else {
+                        for (int i = 0; i < cantidad; i++) {
+                            a[i] ^= b[i];
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Escribe el patrón de bits de una variable en un bloque de palabras.
+     *
+     * @param posicion La posición de la variable.
+     * @param destino  Donde se escribe el patrón.
+     * @param inicio   La primera palabra del bloque.
+     * @param cantidad La cantidad de palabras del bloque.
+     */
+    private void columna(int posicion, long[] destino, int inicio, int cantidad) {
+        int bit = variables.length - 1 - posicion;
+        if (bit < 6) {
+            Arrays.fill(destino, 0, cantidad, PATRONES[bit]);
+            return;
+        }
+        for (int i = 0; i < cantidad; i++) {
+            destino[i] = (((inicio + i) >>> (bit - 6)) & 1) != 0 ? -1L : 0L;
+        }
+    }
+
+    /**
+     * Cuenta las asignaciones que hacen verdadera la expresión.
+     *
+     * @return La cantidad de filas verdaderas.
+     */
+    public long contarSatisfacciones() {
+        long total = 0;
+        for (long palabra : evaluar()) {
+            total += Long.bitCount(palabra);
+        }
+        return total;
+    }
+
+    /**
+     * Escribe la tabla de verdad completa: una línea con los nombres de las variables y el resultado,
+     * y una línea por fila con 0 y 1.
+     *
+     * @param salida Donde se escribe la tabla.
+     * @throws IOException si falla la escritura.
+     */
+    public void escribir(Appendable salida) throws IOException {
+        for (String variable : variables) {
+            salida.append(variable).append(' ');
+        }
+        salida.append("resultado\n");
+        long[] resultado = evaluar();
+        StringBuilder linea = new StringBuilder();
+        for (long fila = 0; fila < getFilas(); fila++) {
+            linea.setLength(0);
+            for (int v = 0; v < variables.length; v++) {
+                linea.append((fila >>> (variables.length - 1 - v)) & 1).append(' ');
+            }
+            linea.append((resultado[(int) (fila >>> 6)] >>> (fila & 63)) & 1).append('\n');
+            salida.append(linea);
+        }
+    }
+}